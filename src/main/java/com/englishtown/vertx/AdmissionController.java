@@ -0,0 +1,196 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the number of requests in progress, globally and separately for reads and writes, so a slow database
+ * results in fast rejections rather than a queue that grows without limit.
+ * <p/>
+ * The global limit is fixed.  The read and write limits adapt to the observed request latency: a limit shrinks by a
+ * backoff factor when a request takes longer than the target latency (at most once per target latency period), and
+ * grows by one after a limit's worth of requests complete within the target.
+ */
+public class AdmissionController {
+
+    /**
+     * An adaptive in-flight limit for one class of requests
+     */
+    public static class Limiter {
+
+        private final int minLimit;
+        private final int maxLimit;
+        private final long targetLatency;
+        private final double backoff;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong admitted = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private volatile int limit;
+        private int successes;
+        private long lastDecrease;
+
+        /**
+         * @param minLimit      the lowest the limit can shrink to
+         * @param maxLimit      the initial and highest limit
+         * @param targetLatency the target request latency in milliseconds
+         * @param backoff       the factor the limit is multiplied by when the target is missed
+         */
+        public Limiter(int minLimit, int maxLimit, long targetLatency, double backoff) {
+            this.minLimit = Math.max(1, Math.min(minLimit, maxLimit));
+            this.maxLimit = maxLimit;
+            this.targetLatency = TimeUnit.MILLISECONDS.toNanos(targetLatency);
+            this.backoff = backoff;
+            this.limit = maxLimit;
+            this.lastDecrease = System.nanoTime() - this.targetLatency;
+        }
+
+        boolean tryAcquire() {
+            if (inFlight.incrementAndGet() > limit) {
+                inFlight.decrementAndGet();
+                rejected.incrementAndGet();
+                return false;
+            }
+            admitted.incrementAndGet();
+            return true;
+        }
+
+        void release() {
+            inFlight.decrementAndGet();
+        }
+
+        /**
+         * Adjusts the limit for a completed request
+         *
+         * @param latency the request latency in nanoseconds
+         * @param now     the current {@link System#nanoTime()}
+         */
+        synchronized void update(long latency, long now) {
+            if (latency > targetLatency) {
+                successes = 0;
+                if (now - lastDecrease >= targetLatency) {
+                    limit = Math.max(minLimit, (int) (limit * backoff));
+                    lastDecrease = now;
+                }
+            } else if (++successes >= limit) {
+                successes = 0;
+                limit = Math.min(maxLimit, limit + 1);
+            }
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        public JsonObject getStats() {
+            return new JsonObject()
+                    .putNumber("limit", limit)
+                    .putNumber("inFlight", inFlight.get())
+                    .putNumber("admitted", admitted.get())
+                    .putNumber("rejected", rejected.get());
+        }
+    }
+
+    /**
+     * An admitted request, released once when the request completes
+     */
+    public class Permit {
+
+        private final Limiter limiter;
+        private final long start = System.nanoTime();
+
+        private Permit(Limiter limiter) {
+            this.limiter = limiter;
+        }
+
+        /**
+         * Releases the permit and adapts the limit to the request latency
+         */
+        public void release() {
+            long now = System.nanoTime();
+            limiter.update(now - start, now);
+            cancel();
+        }
+
+        /**
+         * Releases the permit of a request that was never run
+         */
+        public void cancel() {
+            limiter.release();
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private final int maxInFlight;
+    private final Limiter read;
+    private final Limiter write;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param maxInFlight the global limit
+     * @param read        the read limit
+     * @param write       the write limit
+     */
+    public AdmissionController(int maxInFlight, Limiter read, Limiter write) {
+        this.maxInFlight = maxInFlight;
+        this.read = read;
+        this.write = write;
+    }
+
+    /**
+     * Admits a request if it is within the limits
+     *
+     * @param isWrite whether the request is a write
+     * @return the permit, or null if the request is rejected
+     */
+    public Permit acquire(boolean isWrite) {
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            rejected.incrementAndGet();
+            return null;
+        }
+        Limiter limiter = isWrite ? write : read;
+        if (!limiter.tryAcquire()) {
+            inFlight.decrementAndGet();
+            return null;
+        }
+        return new Permit(limiter);
+    }
+
+    public JsonObject getStats() {
+        return new JsonObject()
+                .putNumber("maxInFlight", maxInFlight)
+                .putNumber("inFlight", inFlight.get())
+                .putNumber("rejected", rejected.get())
+                .putObject("read", read.getStats())
+                .putObject("write", write.getStats());
+    }
+
+}
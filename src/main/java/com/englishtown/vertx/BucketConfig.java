@@ -0,0 +1,73 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Module settings that can be overridden per GridFS bucket.  Overrides are read from the "bucket_config" object of
+ * the module config, keyed by bucket name, and fall back to the same field at the top level of the module config.
+ */
+public class BucketConfig {
+
+    private final JsonObject config;
+    private final JsonObject buckets;
+
+    public BucketConfig(JsonObject config) {
+        this.config = config;
+        this.buckets = config.getObject("bucket_config", new JsonObject());
+    }
+
+    /**
+     * @return the names of the buckets with overrides
+     */
+    public Iterable<String> getBuckets() {
+        return buckets.getFieldNames();
+    }
+
+    public String getString(String bucket, String fieldName, String defaultValue) {
+        JsonObject overrides = buckets.getObject(bucket);
+        if (overrides != null && overrides.containsField(fieldName)) {
+            return overrides.getString(fieldName);
+        }
+        return config.getString(fieldName, defaultValue);
+    }
+
+    public JsonObject getObject(String bucket, String fieldName) {
+        JsonObject overrides = buckets.getObject(bucket);
+        if (overrides != null && overrides.containsField(fieldName)) {
+            return overrides.getObject(fieldName);
+        }
+        return config.getObject(fieldName);
+    }
+
+    public boolean getBoolean(String bucket, String fieldName, boolean defaultValue) {
+        JsonObject overrides = buckets.getObject(bucket);
+        if (overrides != null && overrides.containsField(fieldName)) {
+            return overrides.getBoolean(fieldName);
+        }
+        return config.getBoolean(fieldName, defaultValue);
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Separate execution lanes for reads and writes, and optionally for individual buckets, so one kind of traffic cannot
+ * take every thread and database connection away from another.  A bucket lane takes both the reads and the writes of
+ * its bucket.
+ */
+public class Bulkheads {
+
+    private final MessageExecutor read;
+    private final MessageExecutor write;
+    private final Map<String, MessageExecutor> buckets;
+
+    /**
+     * @param read    the read lane
+     * @param write   the write lane
+     * @param buckets the bucket lanes keyed by bucket name
+     */
+    public Bulkheads(MessageExecutor read, MessageExecutor write, Map<String, MessageExecutor> buckets) {
+        this.read = read;
+        this.write = write;
+        this.buckets = buckets;
+    }
+
+    /**
+     * @return true if any bucket has its own lane, so {@link #select} needs the bucket
+     */
+    public boolean hasBucketLanes() {
+        return !buckets.isEmpty();
+    }
+
+    /**
+     * Returns the lane for a request
+     *
+     * @param bucket  the request bucket, may be null
+     * @param isWrite whether the request is a write
+     * @return the lane
+     */
+    public MessageExecutor select(String bucket, boolean isWrite) {
+        MessageExecutor executor = bucket == null ? null : buckets.get(bucket);
+        if (executor != null) {
+            return executor;
+        }
+        return isWrite ? write : read;
+    }
+
+    public JsonObject getStats() {
+        JsonObject bucketStats = new JsonObject();
+        for (Map.Entry<String, MessageExecutor> entry : buckets.entrySet()) {
+            bucketStats.putObject(entry.getKey(), entry.getValue().getStats());
+        }
+        return new JsonObject()
+                .putObject("read", read.getStats())
+                .putObject("write", write.getStats())
+                .putObject("buckets", bucketStats);
+    }
+
+    /**
+     * Shuts down every lane, see {@link MessageExecutor#shutdown}
+     *
+     * @param timeout the time in milliseconds to wait for the running handlers of each lane
+     * @return the messages that were still queued
+     */
+    public List<Message<?>> shutdown(long timeout) {
+        List<Message<?>> queued = new ArrayList<>();
+        queued.addAll(read.shutdown(timeout));
+        queued.addAll(write.shutdown(timeout));
+        for (MessageExecutor executor : buckets.values()) {
+            queued.addAll(executor.shutdown(timeout));
+        }
+        return queued;
+    }
+
+}
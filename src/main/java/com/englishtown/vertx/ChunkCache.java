@@ -0,0 +1,131 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.bson.types.ObjectId;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * LRU cache of chunk data keyed by bucket, files_id and n.  Chunk bytes are held in pooled direct buffers outside the
+ * java heap and are released explicitly on eviction, so a large cache does not add to garbage collection work.
+ * <p>
+ * Writes and deletes invalidate every cached chunk of the file.  A reader takes the file version before querying and
+ * passes it to {@link #put}, so data read before an invalidation is never cached after it.
+ */
+public class ChunkCache {
+
+    private final long maxBytes;
+    private final int maxEntryBytes;
+    private final ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+    private final VersionedCache<ByteBuf> cache;
+
+    /**
+     * @param maxBytes      the maximum total size of cached chunk data
+     * @param maxEntryBytes the maximum size of a single cached chunk, larger chunks are not cached
+     */
+    public ChunkCache(long maxBytes, int maxEntryBytes) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+        this.cache = new VersionedCache<ByteBuf>(maxBytes, Long.MAX_VALUE, 0) {
+            @Override
+            protected void release(ByteBuf value) {
+                value.release();
+            }
+        };
+    }
+
+    /**
+     * @return a copy of the cached chunk data, or null if the chunk is not cached
+     */
+    public synchronized byte[] get(String bucket, ObjectId filesId, int n) {
+
+        // Copied while holding the lock, so the buffer cannot be released by a concurrent eviction
+        VersionedCache.Entry<ByteBuf> entry = cache.get(bucket, filesId, n);
+        if (entry == null) {
+            return null;
+        }
+
+        ByteBuf buf = entry.getValue();
+        byte[] data = new byte[buf.readableBytes()];
+        buf.getBytes(buf.readerIndex(), data);
+        return data;
+
+    }
+
+    /**
+     * @return the current version of a file, to be passed to {@link #put} after reading its chunks
+     */
+    public long getVersion(String bucket, ObjectId filesId) {
+        return cache.getVersion(bucket, filesId);
+    }
+
+    /**
+     * Caches chunk data, evicting the least recently used chunks to make room
+     *
+     * @param version the file version taken before the chunk was read
+     * @return true if the chunk was cached, false if it is too large or the file was invalidated since version
+     */
+    public synchronized boolean put(String bucket, ObjectId filesId, int n, byte[] data, long version) {
+
+        if (data.length > maxEntryBytes || data.length > maxBytes || cache.getVersion(bucket, filesId) != version) {
+            return false;
+        }
+
+        ByteBuf buf = allocator.directBuffer(data.length, data.length);
+        buf.writeBytes(data);
+        if (!cache.put(bucket, filesId, n, buf, data.length, version)) {
+            buf.release();
+            return false;
+        }
+        return true;
+
+    }
+
+    /**
+     * Drops every cached chunk of a file
+     */
+    public synchronized void invalidate(String bucket, ObjectId filesId) {
+        cache.invalidate(bucket, filesId);
+    }
+
+    /**
+     * Drops every cached chunk and releases its memory
+     */
+    public synchronized void clear() {
+        cache.clear();
+    }
+
+    /**
+     * @return the cache counters and current size
+     */
+    public synchronized JsonObject getStats() {
+        return cache.getStats()
+                .putNumber("bytes", cache.getWeight())
+                .putNumber("maxBytes", maxBytes);
+    }
+
+}
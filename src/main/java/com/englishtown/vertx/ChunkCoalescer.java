@@ -0,0 +1,219 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import com.mongodb.DBObject;
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Write-behind stage that buffers chunk documents per bucket and write concern, and writes them with one bulk insert
+ * once enough chunks or bytes are buffered, or the oldest buffered chunk has waited long enough.  Every chunk keeps its
+ * own callback so the original message can be acknowledged once its batch is committed.
+ * <p>
+ * Chunks may be added from threads without a Vert.x context, whose timers fire on an event loop, so a batch flushed by
+ * its timer is written on the context that created the coalescer.
+ */
+public class ChunkCoalescer {
+
+    /**
+     * Writes a batch of chunk documents
+     */
+    public interface Writer {
+        /**
+         * @param bucket       the GridFS bucket
+         * @param writeConcern the write concern name
+         * @param chunks       the chunk documents to write
+         * @return an error message per chunk, null entries are chunks that were saved
+         */
+        List<String> write(String bucket, String writeConcern, List<DBObject> chunks);
+    }
+
+    private final Vertx vertx;
+    private final Context context;
+    private final Writer writer;
+    private final int maxChunks;
+    private final long maxBytes;
+    private final long maxDelay;
+    private final ConcurrentMap<String, Batch> batches = new ConcurrentHashMap<>();
+
+    public ChunkCoalescer(Vertx vertx, Writer writer, int maxChunks, long maxBytes, long maxDelay) {
+        this.vertx = vertx;
+        this.context = vertx.currentContext();
+        this.writer = writer;
+        this.maxChunks = maxChunks;
+        this.maxBytes = maxBytes;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Buffers a chunk document.  If the batch is full it is flushed on the calling thread.
+     *
+     * @param bucket       the GridFS bucket
+     * @param writeConcern the write concern name
+     * @param chunk        the chunk document
+     * @param size         the chunk data size in bytes
+     * @param callback     called with null once the chunk is saved, or with an error message
+     */
+    public void add(String bucket, String writeConcern, DBObject chunk, int size, Handler<String> callback) {
+
+        String key = bucket + "/" + writeConcern;
+        Batch batch = batches.get(key);
+        if (batch == null) {
+            batch = new Batch(bucket, writeConcern);
+            Batch existing = batches.putIfAbsent(key, batch);
+            if (existing != null) {
+                batch = existing;
+            }
+        }
+
+        Pending full = batch.add(chunk, size, callback);
+        if (full != null) {
+            write(batch, full);
+        }
+
+    }
+
+    /**
+     * Flushes every buffered chunk on the calling thread
+     */
+    public void flushAll() {
+        for (Batch batch : batches.values()) {
+            Pending pending = batch.drain();
+            if (pending != null) {
+                write(batch, pending);
+            }
+        }
+    }
+
+    private void write(Batch batch, Pending pending) {
+
+        List<String> errors;
+        try {
+            errors = writer.write(batch.bucket, batch.writeConcern, pending.chunks);
+        } catch (RuntimeException e) {
+            errors = new ArrayList<>(pending.chunks.size());
+            for (int i = 0; i < pending.chunks.size(); i++) {
+                errors.add("Error saving chunk: " + e.getMessage());
+            }
+        }
+
+        for (int i = 0; i < pending.callbacks.size(); i++) {
+            pending.callbacks.get(i).handle(errors.get(i));
+        }
+
+    }
+
+    /**
+     * Chunks drained from a batch and waiting to be written
+     */
+    private static class Pending {
+        private final List<DBObject> chunks = new ArrayList<>();
+        private final List<Handler<String>> callbacks = new ArrayList<>();
+        private long bytes;
+    }
+
+    /**
+     * The chunks currently buffered for a bucket and write concern
+     */
+    private class Batch {
+
+        private final String bucket;
+        private final String writeConcern;
+        private Pending pending;
+        private long timerId = -1;
+
+        private Batch(String bucket, String writeConcern) {
+            this.bucket = bucket;
+            this.writeConcern = writeConcern;
+        }
+
+        private synchronized Pending add(DBObject chunk, int size, Handler<String> callback) {
+
+            if (pending == null) {
+                pending = new Pending();
+                // Flush whatever has been buffered once the first chunk has waited max delay
+                timerId = vertx.setTimer(maxDelay, new Handler<Long>() {
+                    @Override
+                    public void handle(Long timerId) {
+                        final Pending expired = drain(timerId);
+                        if (expired == null) {
+                            return;
+                        }
+                        if (context == null) {
+                            write(Batch.this, expired);
+                            return;
+                        }
+                        context.runOnContext(new Handler<Void>() {
+                            @Override
+                            public void handle(Void event) {
+                                write(Batch.this, expired);
+                            }
+                        });
+                    }
+                });
+            }
+
+            pending.chunks.add(chunk);
+            pending.callbacks.add(callback);
+            pending.bytes += size;
+
+            if (pending.chunks.size() >= maxChunks || pending.bytes >= maxBytes) {
+                return drain();
+            }
+            return null;
+        }
+
+        private synchronized Pending drain(long expiredTimerId) {
+            // The timer belongs to a batch that was already flushed by size
+            if (expiredTimerId != timerId) {
+                return null;
+            }
+            timerId = -1;
+            return swap();
+        }
+
+        private synchronized Pending drain() {
+            if (timerId != -1) {
+                vertx.cancelTimer(timerId);
+                timerId = -1;
+            }
+            return swap();
+        }
+
+        private Pending swap() {
+            Pending drained = pending;
+            pending = null;
+            return drained;
+        }
+
+    }
+
+}
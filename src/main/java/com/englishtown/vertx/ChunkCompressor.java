@@ -0,0 +1,177 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import io.netty.buffer.ByteBuf;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses chunk data for a bucket.  Chunks that do not compress by at least the minimum ratio are stored raw.
+ */
+public class ChunkCompressor {
+
+    public static final String DEFLATE = "deflate";
+    public static final String LZ4 = "lz4";
+
+    private static final LZ4Factory LZ4_FACTORY = LZ4Factory.fastestJavaInstance();
+
+    private final String codec;
+    private final int level;
+    private final double minRatio;
+
+    public ChunkCompressor(String codec, int level, double minRatio) {
+        if (!DEFLATE.equals(codec) && !LZ4.equals(codec)) {
+            throw new IllegalArgumentException("compression codec " + codec + " is not supported");
+        }
+        this.codec = codec;
+        this.level = level;
+        this.minRatio = minRatio;
+    }
+
+    /**
+     * Creates a compressor from a bucket "compression" config object
+     *
+     * @param config the compression config
+     * @return the compressor
+     */
+    public static ChunkCompressor create(JsonObject config) {
+        String codec = config.getString("codec", DEFLATE);
+        int level = config.getInteger("level", DEFLATE.equals(codec) ? Deflater.DEFAULT_COMPRESSION : 0);
+        double minRatio = config.containsField("min_ratio") ? config.getNumber("min_ratio").doubleValue() : 1.1;
+        return new ChunkCompressor(codec, level, minRatio);
+    }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    /**
+     * Compresses chunk data
+     *
+     * @param data the chunk data, which is not consumed
+     * @return the compressed bytes, or null if the data did not compress by at least the minimum ratio
+     */
+    public byte[] compress(ByteBuf data) {
+
+        int length = data.readableBytes();
+        byte[] input;
+        int offset;
+
+        if (data.hasArray()) {
+            input = data.array();
+            offset = data.arrayOffset() + data.readerIndex();
+        } else {
+            input = new byte[length];
+            data.getBytes(data.readerIndex(), input);
+            offset = 0;
+        }
+
+        int maxLength = (int) (length / minRatio);
+        if (maxLength <= 0) {
+            return null;
+        }
+
+        byte[] output = new byte[maxLength];
+        int compressed = LZ4.equals(codec)
+                ? compressLz4(input, offset, length, output)
+                : compressDeflate(input, offset, length, output);
+
+        if (compressed < 0) {
+            return null;
+        }
+
+        byte[] result = new byte[compressed];
+        System.arraycopy(output, 0, result, 0, compressed);
+        return result;
+    }
+
+    private int compressDeflate(byte[] input, int offset, int length, byte[] output) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(input, offset, length);
+            deflater.finish();
+            int compressed = deflater.deflate(output);
+            return deflater.finished() ? compressed : -1;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private int compressLz4(byte[] input, int offset, int length, byte[] output) {
+        LZ4Compressor compressor = level > 0 ? LZ4_FACTORY.highCompressor() : LZ4_FACTORY.fastCompressor();
+        try {
+            return compressor.compress(input, offset, length, output, 0, output.length);
+        } catch (LZ4Exception e) {
+            // Did not fit in the output buffer, so it does not reach the minimum ratio
+            return -1;
+        }
+    }
+
+    /**
+     * Decompresses chunk data
+     *
+     * @param codec  the codec the data was compressed with
+     * @param data   the compressed bytes
+     * @param length the uncompressed length
+     * @return the chunk data
+     */
+    public static byte[] decompress(String codec, byte[] data, int length) {
+
+        byte[] output = new byte[length];
+
+        if (LZ4.equals(codec)) {
+            int decompressed = LZ4_FACTORY.safeDecompressor().decompress(data, 0, data.length, output, 0, length);
+            if (decompressed != length) {
+                throw new IllegalStateException("lz4 chunk decompressed to " + decompressed + " bytes, expected " + length);
+            }
+            return output;
+        }
+
+        if (DEFLATE.equals(codec)) {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(data);
+                int inflated = inflater.inflate(output);
+                if (inflated != length || !inflater.finished()) {
+                    throw new IllegalStateException("deflate chunk inflated to " + inflated + " bytes, expected " + length);
+                }
+                return output;
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("deflate chunk is corrupt", e);
+            } finally {
+                inflater.end();
+            }
+        }
+
+        throw new IllegalStateException("compression codec " + codec + " is not supported");
+    }
+
+}
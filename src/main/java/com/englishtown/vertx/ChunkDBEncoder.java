@@ -0,0 +1,72 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import com.mongodb.DBEncoder;
+import com.mongodb.DBEncoderFactory;
+import com.mongodb.DefaultDBEncoder;
+import io.netty.buffer.ByteBuf;
+import org.bson.BSON;
+
+import java.io.IOException;
+
+/**
+ * A {@link DefaultDBEncoder} that writes Netty {@link ByteBuf} values as BSON binary straight from the buffer, so
+ * chunk payloads sliced out of an event bus message are never copied into an intermediate byte[]
+ */
+public class ChunkDBEncoder extends DefaultDBEncoder {
+
+    public static final DBEncoderFactory FACTORY = new DBEncoderFactory() {
+        @Override
+        public DBEncoder create() {
+            return new ChunkDBEncoder();
+        }
+    };
+
+    @Override
+    protected boolean putSpecial(String name, Object o) {
+        if (o instanceof ByteBuf) {
+            putByteBuf(name, (ByteBuf) o);
+            return true;
+        }
+        return super.putSpecial(name, o);
+    }
+
+    protected void putByteBuf(String name, ByteBuf data) {
+        int length = data.readableBytes();
+
+        _put(BSON.BINARY, name);
+        _buf.writeInt(length);
+        _buf.write(BSON.B_GENERAL);
+
+        try {
+            // Heap buffers are written directly from their backing array
+            data.getBytes(data.readerIndex(), _buf, length);
+        } catch (IOException e) {
+            // OutputBuffer writes to memory and never throws
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,314 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads ahead chunks for clients streaming a file with chained getChunk replies.  Each stream fills a window of
+ * chunks on a background thread while the client consumes the current chunk.  The window is bounded by both a chunk
+ * count and a byte size, and idle streams are closed after a timeout.
+ * <p>
+ * All streams also share a total byte budget.  Once it is used up, streams stop reading ahead until chunks are taken,
+ * and a stream with an empty window only reads the chunk its client is waiting for.  The read ahead bytes can so
+ * exceed the budget by at most one chunk per stream.
+ */
+public class ChunkPrefetcher {
+
+    /**
+     * Reads the chunks of a file in order, usually from a cursor
+     */
+    public interface Source {
+        /**
+         * @return the next chunk, or null if there are no more chunks
+         */
+        Chunk next();
+
+        /**
+         * Releases the source.  Never called concurrently with {@link #next()}.
+         */
+        void close();
+    }
+
+    /**
+     * A chunk number and its data
+     */
+    public static class Chunk {
+
+        private final int n;
+        private final byte[] data;
+
+        public Chunk(int n, byte[] data) {
+            this.n = n;
+            this.data = data;
+        }
+
+        public int getN() {
+            return n;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+    }
+
+    private final int maxChunks;
+    private final long maxBytes;
+    private final long maxTotalBytes;
+    private final int maxStreams;
+    private final long timeout;
+    private final ExecutorService executor;
+    private final Set<Stream> streams = Collections.newSetFromMap(new ConcurrentHashMap<Stream, Boolean>());
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    /**
+     * @param maxChunks     the maximum number of chunks read ahead per stream
+     * @param maxBytes      the maximum number of chunk bytes read ahead per stream
+     * @param maxTotalBytes the maximum number of chunk bytes read ahead by all streams together
+     * @param maxStreams    the maximum number of open streams
+     * @param threads       the number of background read threads
+     * @param timeout       the time in milliseconds a stream may be idle, or wait for a chunk, before it is closed
+     */
+    public ChunkPrefetcher(int maxChunks, long maxBytes, long maxTotalBytes, int maxStreams, int threads,
+                           long timeout) {
+        this.maxChunks = maxChunks;
+        this.maxBytes = maxBytes;
+        this.maxTotalBytes = maxTotalBytes;
+        this.maxStreams = maxStreams;
+        this.timeout = timeout;
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "gridfs-prefetch-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Opens a stream and starts reading ahead
+     *
+     * @param source the chunk source
+     * @return the stream, or null if the maximum number of streams are already open.  The source is not closed in
+     * that case.
+     */
+    public Stream open(Source source) {
+        if (streams.size() >= maxStreams) {
+            return null;
+        }
+        Stream stream = new Stream(source);
+        streams.add(stream);
+        stream.start();
+        return stream;
+    }
+
+    /**
+     * Closes streams that have been idle for longer than the timeout, e.g. because the client stopped replying
+     */
+    public void expire() {
+        long cutoff = System.currentTimeMillis() - timeout;
+        for (Stream stream : streams) {
+            if (stream.lastAccess < cutoff) {
+                stream.close();
+            }
+        }
+    }
+
+    /**
+     * @return the number of open streams
+     */
+    public int getStreamCount() {
+        return streams.size();
+    }
+
+    /**
+     * @return the number of chunk bytes read ahead by all streams
+     */
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    /**
+     * Closes every stream and stops the background threads
+     */
+    public void shutdown() {
+        for (Stream stream : streams) {
+            stream.close();
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * The read ahead window of one client stream
+     */
+    public class Stream implements Runnable {
+
+        private final Source source;
+        private final Deque<Chunk> window = new ArrayDeque<>();
+        private long bytes;
+        private boolean filling;
+        private boolean exhausted;
+        private boolean closed;
+        private boolean sourceClosed;
+        private RuntimeException error;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        private Stream(Source source) {
+            this.source = source;
+        }
+
+        private synchronized void start() {
+            schedule();
+        }
+
+        /**
+         * Waits for the next chunk
+         *
+         * @return the next chunk, or null if there are no more chunks
+         * @throws TimeoutException     if no chunk was read within the timeout
+         * @throws InterruptedException if the calling thread was interrupted
+         */
+        public synchronized Chunk take() throws TimeoutException, InterruptedException {
+
+            lastAccess = System.currentTimeMillis();
+            long deadline = lastAccess + timeout;
+
+            while (window.isEmpty() && !exhausted && !closed) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new TimeoutException("timed out waiting for the next chunk");
+                }
+                wait(remaining);
+            }
+
+            Chunk chunk = window.poll();
+            if (chunk == null) {
+                if (error != null) {
+                    throw error;
+                }
+                return null;
+            }
+
+            bytes -= chunk.data.length;
+            totalBytes.addAndGet(-chunk.data.length);
+            lastAccess = System.currentTimeMillis();
+            schedule();
+            return chunk;
+        }
+
+        /**
+         * Drops the read ahead chunks and releases the source
+         */
+        public void close() {
+            synchronized (this) {
+                closed = true;
+                window.clear();
+                totalBytes.addAndGet(-bytes);
+                bytes = 0;
+                notifyAll();
+                // A running fill releases the source itself once the current read returns
+                if (!filling) {
+                    closeSource();
+                }
+            }
+            streams.remove(this);
+        }
+
+        @Override
+        public void run() {
+
+            while (true) {
+                synchronized (this) {
+                    if (closed || exhausted || isFull()) {
+                        filling = false;
+                        if (closed) {
+                            closeSource();
+                        }
+                        return;
+                    }
+                }
+
+                Chunk chunk = null;
+                RuntimeException failure = null;
+                try {
+                    chunk = source.next();
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+
+                synchronized (this) {
+                    if (chunk == null) {
+                        error = failure;
+                        exhausted = true;
+                        closeSource();
+                    } else if (!closed) {
+                        window.add(chunk);
+                        bytes += chunk.data.length;
+                        totalBytes.addAndGet(chunk.data.length);
+                    }
+                    notifyAll();
+                }
+            }
+
+        }
+
+        private boolean isFull() {
+            if (window.isEmpty()) {
+                // The client may be waiting, so the next chunk is read even when the shared budget is used up
+                return false;
+            }
+            return window.size() >= maxChunks || bytes >= maxBytes || totalBytes.get() >= maxTotalBytes;
+        }
+
+        private void schedule() {
+            if (filling || exhausted || closed || isFull()) {
+                return;
+            }
+            filling = true;
+            executor.execute(this);
+        }
+
+        private void closeSource() {
+            if (!sourceClosed) {
+                sourceClosed = true;
+                source.close();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,323 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.eventbus.ReplyException;
+import org.vertx.java.core.eventbus.ReplyFailure;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.streams.ReadStream;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cuts a stream into GridFS chunks as it arrives and saves them with the module saveChunk handler, then saves the file
+ * information once the stream ends.  At most maxOutstanding chunks are being saved at a time, and the stream is paused
+ * until one of them completes, so memory use does not depend on the upload size.
+ * <p>
+ * The file id must have been claimed with the module claimFile action, so no other upload writes chunks under it.  If
+ * the upload fails, the chunks already saved are removed again and the claim is released.  After a timeout a chunk
+ * save may still complete, so the claim is kept until it expires and the next upload to the same id removes the
+ * chunks.
+ */
+public class ChunkUploader {
+
+    /**
+     * The status of the reply passed to the done handler when a module reply did not arrive within the timeout
+     */
+    public static final String STATUS_TIMEOUT = "timeout";
+
+    /**
+     * The status of the reply passed to the done handler when chunks or a file with the id already exist, or the claim
+     * on the id was taken over by another upload
+     */
+    public static final String STATUS_EXISTS = "exists";
+
+    private final EventBus eb;
+    private final String address;
+    private final String bucket;
+    private final String id;
+    private final String claim;
+    private final int chunkSize;
+    private final int maxOutstanding;
+    private final long timeout;
+    private final Handler<JsonObject> doneHandler;
+
+    private ReadStream<?> stream;
+    private String filename;
+    private String contentType;
+    private Buffer pending = new Buffer();
+    private int n;
+    private long length;
+    private int outstanding;
+    private boolean paused;
+    private boolean ended;
+    private boolean done;
+    private boolean cleanup;
+
+    /**
+     * @param eb             the event bus
+     * @param address        the module main address
+     * @param bucket         the GridFS bucket
+     * @param id             the file id
+     * @param claim          the claim on the file id returned by claimFile
+     * @param chunkSize      the chunk size in bytes
+     * @param maxOutstanding the maximum number of chunks being saved at a time
+     * @param timeout        the time in milliseconds to wait for each module reply
+     * @param doneHandler    called once with the saveFile reply, or an error, busy or {@link #STATUS_TIMEOUT} reply
+     */
+    public ChunkUploader(EventBus eb, String address, String bucket, String id, String claim, int chunkSize,
+                         int maxOutstanding, long timeout, Handler<JsonObject> doneHandler) {
+        this.eb = eb;
+        this.address = address;
+        this.bucket = bucket;
+        this.id = id;
+        this.claim = claim;
+        this.chunkSize = chunkSize;
+        this.maxOutstanding = maxOutstanding;
+        this.timeout = timeout;
+        this.doneHandler = doneHandler;
+    }
+
+    /**
+     * Starts reading the stream
+     *
+     * @param stream      the request body or multipart file upload
+     * @param filename    the optional file name
+     * @param contentType the optional content type
+     */
+    public void upload(ReadStream<?> stream, String filename, String contentType) {
+
+        this.stream = stream;
+        this.filename = filename;
+        this.contentType = contentType;
+
+        stream.dataHandler(new Handler<Buffer>() {
+            @Override
+            public void handle(Buffer data) {
+                append(data);
+            }
+        });
+        stream.endHandler(new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                end();
+            }
+        });
+        stream.exceptionHandler(new Handler<Throwable>() {
+            @Override
+            public void handle(Throwable t) {
+                fail("Error reading upload: " + t.getMessage());
+            }
+        });
+
+    }
+
+    private void append(Buffer data) {
+
+        if (done) {
+            return;
+        }
+        length += data.length();
+
+        // Only a partial chunk is kept between reads, whole chunks are sent as soon as they are complete
+        int pos = 0;
+        if (pending.length() > 0) {
+            int take = Math.min(chunkSize - pending.length(), data.length());
+            pending.appendBuffer(data, 0, take);
+            pos = take;
+            if (pending.length() == chunkSize) {
+                saveChunk(pending);
+                pending = new Buffer();
+            }
+        }
+        while (data.length() - pos >= chunkSize) {
+            saveChunk(data.getBuffer(pos, pos + chunkSize));
+            pos += chunkSize;
+        }
+        if (pos < data.length()) {
+            pending.appendBuffer(data, pos, data.length() - pos);
+        }
+
+    }
+
+    private void end() {
+
+        if (done) {
+            return;
+        }
+        ended = true;
+        if (pending.length() > 0) {
+            saveChunk(pending);
+            pending = new Buffer();
+        }
+        if (outstanding == 0) {
+            saveFile();
+        }
+
+    }
+
+    private void saveChunk(Buffer data) {
+
+        JsonObject jsonObject = new JsonObject()
+                .putString("files_id", id)
+                .putNumber("n", n++)
+                .putString("bucket", bucket);
+        byte[] json = jsonObject.encode().getBytes(StandardCharsets.UTF_8);
+
+        Buffer message = new Buffer(4 + json.length + data.length())
+                .appendInt(json.length)
+                .appendBytes(json)
+                .appendBuffer(data);
+
+        outstanding++;
+        if (outstanding >= maxOutstanding && !paused) {
+            paused = true;
+            stream.pause();
+        }
+
+        eb.sendWithTimeout(address + "/saveChunk", message, timeout, new Handler<AsyncResult<Message<JsonObject>>>() {
+            @Override
+            public void handle(AsyncResult<Message<JsonObject>> result) {
+                chunkSaved(toReply(result));
+            }
+        });
+
+    }
+
+    private void chunkSaved(JsonObject reply) {
+
+        outstanding--;
+        if (done) {
+            removeChunks();
+            return;
+        }
+        if (!"ok".equals(reply.getString("status"))) {
+            if (reply.getString("message", "").endsWith("already exists")) {
+                reply.putString("status", STATUS_EXISTS);
+            }
+            finish(reply);
+            return;
+        }
+
+        if (ended) {
+            if (outstanding == 0) {
+                saveFile();
+            }
+        } else if (paused && outstanding < maxOutstanding) {
+            paused = false;
+            stream.resume();
+        }
+
+    }
+
+    private void saveFile() {
+
+        JsonObject message = new JsonObject()
+                .putString("action", "saveFile")
+                .putString("id", id)
+                .putNumber("length", length)
+                .putNumber("chunkSize", chunkSize)
+                .putNumber("uploadDate", System.currentTimeMillis())
+                .putString("bucket", bucket)
+                .putString("claim", claim);
+        if (filename != null) {
+            message.putString("filename", filename);
+        }
+        if (contentType != null) {
+            message.putString("contentType", contentType);
+        }
+
+        eb.sendWithTimeout(address, message, timeout, new Handler<AsyncResult<Message<JsonObject>>>() {
+            @Override
+            public void handle(AsyncResult<Message<JsonObject>> result) {
+                JsonObject reply = toReply(result);
+                String error = reply.getString("message", "");
+                if (error.startsWith("File exists") || error.startsWith("Claim not held")) {
+                    reply.putString("status", STATUS_EXISTS);
+                }
+                finish(reply);
+            }
+        });
+
+    }
+
+    private JsonObject toReply(AsyncResult<Message<JsonObject>> result) {
+        if (result.succeeded()) {
+            return result.result().body();
+        }
+        boolean timedOut = result.cause() instanceof ReplyException
+                && ((ReplyException) result.cause()).failureType() == ReplyFailure.TIMEOUT;
+        return new JsonObject()
+                .putString("status", timedOut ? STATUS_TIMEOUT : "error")
+                .putString("message", String.valueOf(result.cause().getMessage()));
+    }
+
+    private void fail(String error) {
+        finish(new JsonObject().putString("status", "error").putString("message", error));
+    }
+
+    private void finish(JsonObject reply) {
+        if (done) {
+            return;
+        }
+        done = true;
+        pending = new Buffer();
+
+        // A successful saveFile releases the claim itself.  After a timeout a chunk save may still complete, so the
+        // claim is left to expire and the chunks are removed by the next upload to the id.
+        String status = reply.getString("status");
+        cleanup = !"ok".equals(status) && !STATUS_TIMEOUT.equals(status);
+        removeChunks();
+
+        if (paused) {
+            // Let the rest of the body drain so the connection can send the response
+            paused = false;
+            stream.resume();
+        }
+        doneHandler.handle(reply);
+    }
+
+    /**
+     * Removes the chunks of a failed upload and releases its claim once no chunk save is outstanding.  The module only
+     * removes them while the claim is held, and never once a file has been saved under the id.
+     */
+    private void removeChunks() {
+        if (!cleanup || outstanding > 0) {
+            return;
+        }
+        cleanup = false;
+        eb.send(address, new JsonObject()
+                .putString("action", "deleteFile")
+                .putString("id", id)
+                .putString("bucket", bucket)
+                .putBoolean("orphaned", true)
+                .putString("claim", claim));
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import com.mongodb.*;
+import io.netty.buffer.ByteBuf;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content addressed store for deduplicated chunk data.  Each unique chunk body is stored once in the
+ * &lt;bucket&gt;.blobs collection keyed by its SHA-256 hash, with a count of the chunks referencing it.
+ */
+public class DedupStore {
+
+    public static final String BLOB_FIELD = "blob";
+
+    private final DB db;
+
+    public DedupStore(DB db) {
+        this.db = db;
+    }
+
+    /**
+     * Returns the hash a chunk body is stored under
+     *
+     * @param data the chunk data, which is not consumed
+     * @return the hex SHA-256 hash
+     */
+    public String hash(ByteBuf data) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(data.nioBuffer());
+            return DigestTracker.toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM supports SHA-256
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Adds a reference to a chunk body, storing the body only if it is not already stored
+     *
+     * @param bucket the GridFS bucket
+     * @param hash   the hash returned by {@link #hash}
+     * @param body   the chunk data fields to store
+     */
+    public void store(String bucket, String hash, DBObject body) {
+
+        DBCollection blobs = getBlobsCollection(bucket);
+        DBObject query = new BasicDBObject("_id", hash);
+        DBObject increment = new BasicDBObject("$inc", new BasicDBObject("refs", 1));
+
+        // The hit path only sends the hash, the reference count must be acknowledged to know whether it was a hit
+        if (blobs.update(query, increment, false, false, WriteConcern.ACKNOWLEDGED).getN() > 0) {
+            return;
+        }
+
+        DBObject blob = new BasicDBObject("_id", hash);
+        blob.putAll(body);
+        blob.put("refs", 1);
+
+        try {
+            blobs.insert(blob, WriteConcern.ACKNOWLEDGED);
+        } catch (MongoException.DuplicateKey e) {
+            // Another chunk with the same body was stored concurrently
+            blobs.update(query, increment, false, false, WriteConcern.ACKNOWLEDGED);
+        }
+
+    }
+
+    /**
+     * Loads a chunk body
+     *
+     * @param bucket the GridFS bucket
+     * @param hash   the chunk body hash
+     * @return the chunk data fields, or null if they do not exist
+     */
+    public DBObject load(String bucket, String hash) {
+        return getBlobsCollection(bucket).findOne(new BasicDBObject("_id", hash), new BasicDBObject("refs", 0));
+    }
+
+    /**
+     * Removes a reference to a chunk body, deleting the body once nothing references it
+     *
+     * @param bucket the GridFS bucket
+     * @param hash   the chunk body hash
+     */
+    public void release(String bucket, String hash) {
+
+        DBCollection blobs = getBlobsCollection(bucket);
+        DBObject blob = blobs.findAndModify(
+                new BasicDBObject("_id", hash),
+                new BasicDBObject("refs", 1),
+                null,
+                false,
+                new BasicDBObject("$inc", new BasicDBObject("refs", -1)),
+                true,
+                false);
+
+        if (blob != null && ((Number) blob.get("refs")).intValue() <= 0) {
+            // Only removed if no chunk took a new reference in the meantime
+            blobs.remove(BasicDBObjectBuilder.start()
+                    .add("_id", hash)
+                    .add("refs", new BasicDBObject("$lte", 0))
+                    .get());
+        }
+
+    }
+
+    protected DBCollection getBlobsCollection(String bucket) {
+        DBCollection collection = db.getCollection(bucket + ".blobs");
+        if (collection.getDBEncoderFactory() != ChunkDBEncoder.FACTORY) {
+            collection.setDBEncoderFactory(ChunkDBEncoder.FACTORY);
+        }
+        return collection;
+    }
+
+}
@@ -0,0 +1,248 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import io.netty.buffer.ByteBuf;
+import org.bson.types.ObjectId;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps a running content digest per file as its chunks are saved, so the digest is available when the file
+ * information is saved without reading the file back.  Chunks that arrive ahead of a gap are held until the gap is
+ * filled, up to a per file byte limit.  Past that limit the file is no longer tracked and {@link #finish} returns null.
+ */
+public class DigestTracker {
+
+    private final List<String> algorithms;
+    private final long maxPendingBytes;
+    private final ConcurrentMap<ObjectId, FileDigest> files = new ConcurrentHashMap<>();
+
+    public DigestTracker(List<String> algorithms, long maxPendingBytes) {
+        this.algorithms = algorithms;
+        this.maxPendingBytes = maxPendingBytes;
+        // Fail fast on unknown algorithms
+        createDigests();
+    }
+
+    /**
+     * Adds a saved chunk to the file digest
+     *
+     * @param filesId the file id
+     * @param n       the chunk number
+     * @param data    the chunk data, which is not consumed
+     */
+    public void update(ObjectId filesId, int n, ByteBuf data) {
+
+        FileDigest file = files.get(filesId);
+        if (file == null) {
+            file = new FileDigest(createDigests());
+            FileDigest existing = files.putIfAbsent(filesId, file);
+            if (existing != null) {
+                file = existing;
+            }
+        }
+
+        file.update(n, data);
+
+    }
+
+    /**
+     * Removes and completes the digest for a file
+     *
+     * @param filesId the file id
+     * @return the digest result, or null if the file was not tracked, has gaps or held too many out of order chunks
+     */
+    public Result finish(ObjectId filesId) {
+        FileDigest file = files.remove(filesId);
+        return file == null ? null : file.finish();
+    }
+
+    /**
+     * Stops tracking a file
+     *
+     * @param filesId the file id
+     */
+    public void remove(ObjectId filesId) {
+        files.remove(filesId);
+    }
+
+    /**
+     * Stops tracking files that have not received a chunk for the timeout
+     *
+     * @param timeout the idle timeout in milliseconds
+     */
+    public void expire(long timeout) {
+        long expired = System.currentTimeMillis() - timeout;
+        for (Map.Entry<ObjectId, FileDigest> entry : files.entrySet()) {
+            if (entry.getValue().lastAccess < expired) {
+                files.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Creates a digest for every configured algorithm, used to digest a whole file in one pass
+     *
+     * @return digests keyed by algorithm
+     */
+    public Map<String, MessageDigest> createDigests() {
+        Map<String, MessageDigest> digests = new LinkedHashMap<>();
+        for (String algorithm : algorithms) {
+            try {
+                digests.put(algorithm, MessageDigest.getInstance(algorithm));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException("digest algorithm " + algorithm + " is not supported", e);
+            }
+        }
+        return digests;
+    }
+
+    /**
+     * Returns the files document field for a digest algorithm, MD5 is stored as "md5" and SHA-256 as "sha256"
+     *
+     * @param algorithm the digest algorithm
+     * @return the field name
+     */
+    public static String getFieldName(String algorithm) {
+        return algorithm.toLowerCase().replace("-", "");
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xf, 16);
+            hex[i * 2 + 1] = Character.forDigit(bytes[i] & 0xf, 16);
+        }
+        return new String(hex);
+    }
+
+    /**
+     * A completed file digest
+     */
+    public static class Result {
+
+        private final Map<String, String> digests;
+        private final long length;
+
+        public Result(Map<String, MessageDigest> digests, long length) {
+            this.digests = new LinkedHashMap<>();
+            for (Map.Entry<String, MessageDigest> entry : digests.entrySet()) {
+                this.digests.put(getFieldName(entry.getKey()), toHex(entry.getValue().digest()));
+            }
+            this.length = length;
+        }
+
+        /**
+         * @return hex digests keyed by files document field name
+         */
+        public Map<String, String> getDigests() {
+            return digests;
+        }
+
+        /**
+         * @return the number of bytes digested
+         */
+        public long getLength() {
+            return length;
+        }
+
+    }
+
+    /**
+     * Digest state for a single file
+     */
+    private class FileDigest {
+
+        private final Map<String, MessageDigest> digests;
+        private final TreeMap<Integer, byte[]> pending = new TreeMap<>();
+        private long pendingBytes;
+        private int next;
+        private long length;
+        private boolean overflow;
+        private long lastAccess = System.currentTimeMillis();
+
+        private FileDigest(Map<String, MessageDigest> digests) {
+            this.digests = digests;
+        }
+
+        private synchronized void update(int n, ByteBuf data) {
+
+            lastAccess = System.currentTimeMillis();
+
+            // Chunks already digested are retries of the same chunk
+            if (overflow || n < next || pending.containsKey(n)) {
+                return;
+            }
+
+            if (n > next) {
+                int size = data.readableBytes();
+                if (pendingBytes + size > maxPendingBytes) {
+                    overflow = true;
+                    pending.clear();
+                    return;
+                }
+                byte[] bytes = new byte[size];
+                data.getBytes(data.readerIndex(), bytes);
+                pending.put(n, bytes);
+                pendingBytes += size;
+                return;
+            }
+
+            for (MessageDigest digest : digests.values()) {
+                digest.update(data.nioBuffer());
+            }
+            length += data.readableBytes();
+            next++;
+
+            // Drain chunks that were waiting on this one
+            while (!pending.isEmpty() && pending.firstKey() == next) {
+                byte[] bytes = pending.remove(next);
+                pendingBytes -= bytes.length;
+                for (MessageDigest digest : digests.values()) {
+                    digest.update(bytes);
+                }
+                length += bytes.length;
+                next++;
+            }
+
+        }
+
+        private synchronized Result finish() {
+            if (overflow || !pending.isEmpty()) {
+                return null;
+            }
+            return new Result(digests, length);
+        }
+
+    }
+
+}
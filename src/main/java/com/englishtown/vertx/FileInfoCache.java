@@ -0,0 +1,110 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import org.bson.types.ObjectId;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Bounded LRU cache of getFile results keyed by bucket and file id.  Entries expire after a time to live, and lookups
+ * for files that do not exist are cached with a shorter time to live.
+ * <p>
+ * A reader takes the file version before querying and passes it to {@link #put}, so a result read before an
+ * invalidation is never cached after it.
+ */
+public class FileInfoCache {
+
+    private final int maxEntries;
+    private final VersionedCache<JsonObject> cache;
+
+    /**
+     * @param maxEntries  the maximum number of cached files
+     * @param ttl         the time in milliseconds file information is cached
+     * @param negativeTtl the time in milliseconds a missing file is cached, 0 to not cache missing files
+     */
+    public FileInfoCache(int maxEntries, long ttl, long negativeTtl) {
+        this.maxEntries = maxEntries;
+        this.cache = new VersionedCache<>(maxEntries, ttl, negativeTtl);
+    }
+
+    /**
+     * @return the cached entry, or null if the file is not cached
+     */
+    public Entry get(String bucket, ObjectId id) {
+        VersionedCache.Entry<JsonObject> entry = cache.get(bucket, id, 0);
+        return entry == null ? null : new Entry(entry.getValue());
+    }
+
+    /**
+     * @return the current version of a file, to be passed to {@link #put} after reading it
+     */
+    public long getVersion(String bucket, ObjectId id) {
+        return cache.getVersion(bucket, id);
+    }
+
+    /**
+     * Caches file information
+     *
+     * @param fileInfo the file information, or null if the file does not exist
+     * @param version  the file version taken before the file was read
+     * @return true if the file was cached
+     */
+    public boolean put(String bucket, ObjectId id, JsonObject fileInfo, long version) {
+        return cache.put(bucket, id, 0, fileInfo == null ? null : fileInfo.copy(), 1, version);
+    }
+
+    /**
+     * Drops the cached information for a file
+     */
+    public void invalidate(String bucket, ObjectId id) {
+        cache.invalidate(bucket, id);
+    }
+
+    /**
+     * @return the cache counters and current size
+     */
+    public JsonObject getStats() {
+        return cache.getStats().putNumber("maxEntries", maxEntries);
+    }
+
+    /**
+     * A cached getFile or getFileByName result
+     */
+    public static class Entry {
+
+        private final JsonObject fileInfo;
+
+        Entry(JsonObject fileInfo) {
+            this.fileInfo = fileInfo;
+        }
+
+        /**
+         * @return a copy of the file information, or null if the file does not exist
+         */
+        public JsonObject getFileInfo() {
+            return fileInfo == null ? null : fileInfo.copy();
+        }
+    }
+
+}
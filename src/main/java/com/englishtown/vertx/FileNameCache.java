@@ -0,0 +1,91 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Bounded LRU cache of getFileByName results keyed by bucket, filename and revision.  Entries expire after a time to
+ * live, and lookups for names that do not exist are cached with a shorter time to live.  Saving a file with a name
+ * invalidates every cached revision of that name, since the new file shifts the revision numbers.
+ * <p>
+ * A reader takes the name version before querying and passes it to {@link #put}, so a result read before an
+ * invalidation is never cached after it.
+ */
+public class FileNameCache {
+
+    private final int maxEntries;
+    private final VersionedCache<JsonObject> cache;
+
+    /**
+     * @param maxEntries  the maximum number of cached names and revisions
+     * @param ttl         the time in milliseconds a result is cached
+     * @param negativeTtl the time in milliseconds a missing name is cached, 0 to not cache missing names
+     */
+    public FileNameCache(int maxEntries, long ttl, long negativeTtl) {
+        this.maxEntries = maxEntries;
+        this.cache = new VersionedCache<>(maxEntries, ttl, negativeTtl);
+    }
+
+    /**
+     * @return the cached entry, or null if the name and revision are not cached
+     */
+    public FileInfoCache.Entry get(String bucket, String filename, int revision) {
+        VersionedCache.Entry<JsonObject> entry = cache.get(bucket, filename, revision);
+        return entry == null ? null : new FileInfoCache.Entry(entry.getValue());
+    }
+
+    /**
+     * @return the current version of a name, to be passed to {@link #put} after resolving it
+     */
+    public long getVersion(String bucket, String filename) {
+        return cache.getVersion(bucket, filename);
+    }
+
+    /**
+     * Caches a resolved name
+     *
+     * @param fileInfo the file information, or null if the revision does not exist
+     * @param version  the name version taken before the name was resolved
+     * @return true if the result was cached
+     */
+    public boolean put(String bucket, String filename, int revision, JsonObject fileInfo, long version) {
+        return cache.put(bucket, filename, revision, fileInfo == null ? null : fileInfo.copy(), 1, version);
+    }
+
+    /**
+     * Drops every cached revision of a name
+     */
+    public void invalidate(String bucket, String filename) {
+        cache.invalidate(bucket, filename);
+    }
+
+    /**
+     * @return the cache counters and current size
+     */
+    public JsonObject getStats() {
+        return cache.getStats().putNumber("maxEntries", maxEntries);
+    }
+
+}
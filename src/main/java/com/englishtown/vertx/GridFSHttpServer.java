@@ -0,0 +1,583 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import com.mongodb.gridfs.GridFS;
+import org.bson.types.ObjectId;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Future;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.eventbus.ReplyException;
+import org.vertx.java.core.eventbus.ReplyFailure;
+import org.vertx.java.core.http.HttpServer;
+import org.vertx.java.core.http.HttpServerFileUpload;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.http.HttpServerResponse;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.platform.Verticle;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * HTTP server that serves GridFS files at GET /&lt;bucket&gt;/&lt;id&gt;.  File information and data are read through
+ * the module getFile and getRange actions, and each range segment is only requested once the previous one has been
+ * written to the response, so memory per connection is bounded to about one segment plus the response write queue.
+ * <p>
+ * When uploads are enabled, PUT /&lt;bucket&gt;/&lt;id&gt; saves the request body and a multipart POST to
+ * /&lt;bucket&gt; or /&lt;bucket&gt;/&lt;id&gt; saves the first file part, see {@link ChunkUploader}.  Each upload
+ * claims its id first, and uploads to an existing id or an id claimed by another upload are rejected with a 409.
+ * <p>
+ * A busy reply from the module is returned as a 503 with a Retry-After header, and a module reply that does not arrive
+ * within the timeout as a 504.
+ */
+public class GridFSHttpServer extends Verticle implements Handler<HttpServerRequest> {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 256 * 1024;
+    public static final long DEFAULT_TIMEOUT = 30000;
+
+    /**
+     * Returned by {@link #parseRange} for a range that does not overlap the file
+     */
+    static final long[] UNSATISFIABLE = new long[0];
+
+    protected EventBus eb;
+    protected Logger logger;
+    protected String address;
+    protected int segmentSize;
+    protected boolean uploads;
+    protected int chunkSize;
+    protected int maxOutstandingChunks;
+    protected long timeout;
+    protected int retryAfter;
+
+    @Override
+    public void start(final Future<Void> startedResult) {
+        eb = vertx.eventBus();
+        logger = container.logger();
+
+        JsonObject config = container.config();
+        address = config.getString("address", GridFSModule.DEFAULT_ADDRESS);
+        segmentSize = config.getInteger("segment_size", DEFAULT_SEGMENT_SIZE);
+        uploads = config.getBoolean("uploads", false);
+        chunkSize = config.getInteger("chunk_size", GridFS.DEFAULT_CHUNKSIZE);
+        maxOutstandingChunks = config.getInteger("max_outstanding_chunks", 4);
+        timeout = config.getLong("timeout", DEFAULT_TIMEOUT);
+        retryAfter = config.getInteger("retry_after", 1);
+
+        String host = config.getString("host", "0.0.0.0");
+        int port = config.getInteger("port", 8080);
+
+        vertx.createHttpServer()
+                .requestHandler(this)
+                .listen(port, host, new Handler<AsyncResult<HttpServer>>() {
+                    @Override
+                    public void handle(AsyncResult<HttpServer> result) {
+                        if (result.succeeded()) {
+                            startedResult.setResult(null);
+                        } else {
+                            startedResult.setFailure(result.cause());
+                        }
+                    }
+                });
+    }
+
+    @Override
+    public void handle(final HttpServerRequest request) {
+
+        final HttpServerResponse response = request.response();
+        String method = request.method();
+        boolean upload = "PUT".equals(method) || "POST".equals(method);
+        if (!"GET".equals(method) && !"HEAD".equals(method) && !(uploads && upload)) {
+            response.headers().set("Allow", uploads ? "GET, HEAD, PUT, POST" : "GET, HEAD");
+            sendStatus(response, 405);
+            return;
+        }
+
+        // The bucket name may contain dots but not slashes, so the path is /<bucket>/<id>, or /<bucket> for a POST
+        String path = request.path();
+        String bucket;
+        String id;
+        int slash = path.indexOf('/', 1);
+        if (slash < 0 && "POST".equals(method) && path.length() > 1) {
+            bucket = path.substring(1);
+            id = new ObjectId().toString();
+        } else if (slash > 1 && path.indexOf('/', slash + 1) < 0) {
+            bucket = path.substring(1, slash);
+            id = path.substring(slash + 1);
+        } else {
+            sendStatus(response, 404);
+            return;
+        }
+        if (!ObjectId.isValid(id)) {
+            sendStatus(response, 404);
+            return;
+        }
+
+        if (upload) {
+            receiveNewFile(request, bucket, id);
+        } else {
+            getFile(request, bucket, id);
+        }
+
+    }
+
+    protected void getFile(final HttpServerRequest request, final String bucket, final String id) {
+
+        final HttpServerResponse response = request.response();
+
+        JsonObject message = new JsonObject()
+                .putString("action", "getFile")
+                .putString("id", id)
+                .putString("bucket", bucket);
+
+        eb.sendWithTimeout(address, message, timeout, new Handler<AsyncResult<Message<JsonObject>>>() {
+            @Override
+            public void handle(AsyncResult<Message<JsonObject>> result) {
+                if (result.failed()) {
+                    sendFailure(response, id, result.cause());
+                    return;
+                }
+                JsonObject fileInfo = result.result().body();
+                if ("ok".equals(fileInfo.getString("status"))) {
+                    sendFile(request, bucket, id, fileInfo);
+                } else if ("busy".equals(fileInfo.getString("status"))) {
+                    sendBusy(response);
+                } else if (fileInfo.getString("message", "").startsWith("File does not exist")) {
+                    sendStatus(response, 404);
+                } else {
+                    logger.error("Error getting file " + id + ": " + fileInfo.getString("message"));
+                    sendStatus(response, 500);
+                }
+            }
+        });
+
+    }
+
+    protected void sendFile(HttpServerRequest request, String bucket, String id, JsonObject fileInfo) {
+
+        HttpServerResponse response = request.response();
+        long length = fileInfo.getLong("length");
+        long uploadDate = fileInfo.getLong("uploadDate", 0);
+        String md5 = fileInfo.getString("md5");
+        String etag = "\"" + (md5 != null ? md5 : id + "-" + uploadDate) + "\"";
+        String lastModified = formatDate(uploadDate);
+
+        response.headers()
+                .set("ETag", etag)
+                .set("Last-Modified", lastModified)
+                .set("Accept-Ranges", "bytes")
+                .set("Content-Type", fileInfo.getString("contentType", "application/octet-stream"));
+
+        if (isNotModified(request, etag, uploadDate)) {
+            sendStatus(response, 304);
+            return;
+        }
+
+        long[] range = null;
+        String ifRange = request.headers().get("If-Range");
+        if (ifRange == null || ifRange.equals(etag) || ifRange.equals(lastModified)) {
+            range = parseRange(request.headers().get("Range"), length);
+        }
+
+        if (range == UNSATISFIABLE) {
+            response.headers().set("Content-Range", "bytes */" + length);
+            sendStatus(response, 416);
+            return;
+        }
+
+        long offset = 0;
+        long count = length;
+        if (range != null) {
+            offset = range[0];
+            count = range[1] - range[0] + 1;
+            response.setStatusCode(206);
+            response.headers().set("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+        }
+        response.headers().set("Content-Length", String.valueOf(count));
+
+        if ("HEAD".equals(request.method()) || count == 0) {
+            response.end();
+            return;
+        }
+
+        final SegmentHandler segmentHandler = new SegmentHandler(response, id);
+        response.closeHandler(new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                segmentHandler.close();
+            }
+        });
+
+        JsonObject message = new JsonObject()
+                .putString("action", "getRange")
+                .putString("id", id)
+                .putString("bucket", bucket)
+                .putNumber("offset", offset)
+                .putNumber("length", count)
+                .putNumber("segment_size", segmentSize);
+
+        eb.sendWithTimeout(address, message, timeout, segmentHandler);
+
+    }
+
+    /**
+     * Claims the file id with the module claimFile action, then receives the file.  An existing file, or an upload to
+     * the same id that is still in progress, gets a 409 response.  Chunks left under the id by an earlier upload that
+     * did not save the file information are removed by the claim.
+     */
+    protected void receiveNewFile(final HttpServerRequest request, final String bucket, final String id) {
+
+        final HttpServerResponse response = request.response();
+        request.pause();
+
+        JsonObject message = new JsonObject()
+                .putString("action", "claimFile")
+                .putString("id", id)
+                .putString("bucket", bucket);
+
+        eb.sendWithTimeout(address, message, timeout, new Handler<AsyncResult<Message<JsonObject>>>() {
+            @Override
+            public void handle(AsyncResult<Message<JsonObject>> result) {
+                if (result.failed()) {
+                    request.resume();
+                    sendFailure(response, id, result.cause());
+                    return;
+                }
+
+                JsonObject reply = result.result().body();
+                String error = reply.getString("message", "");
+                if ("ok".equals(reply.getString("status"))) {
+                    receiveFile(request, bucket, id, reply.getString("claim"));
+                    request.resume();
+                    return;
+                }
+
+                // The body is read and dropped, so the connection can be reused
+                request.resume();
+                if ("busy".equals(reply.getString("status"))) {
+                    sendBusy(response);
+                } else if (error.startsWith("File exists") || error.startsWith("File is being uploaded")) {
+                    sendStatus(response, 409);
+                } else {
+                    logger.error("Error preparing upload " + id + ": " + error);
+                    sendStatus(response, 500);
+                }
+            }
+        });
+
+    }
+
+    /**
+     * Receives a file under a claimed id
+     *
+     * @param claim the claim returned by claimFile
+     */
+    protected void receiveFile(final HttpServerRequest request, final String bucket, final String id, String claim) {
+
+        final HttpServerResponse response = request.response();
+        final ChunkUploader uploader = new ChunkUploader(eb, address, bucket, id, claim, chunkSize,
+                maxOutstandingChunks, timeout, new Handler<JsonObject>() {
+                    @Override
+                    public void handle(JsonObject reply) {
+                        String status = reply.getString("status");
+                        if ("ok".equals(status)) {
+                            response.setStatusCode(201);
+                            response.headers().set("Location", "/" + bucket + "/" + id);
+                            response.headers().set("Content-Type", "application/json");
+                            reply.putString("id", id);
+                            response.end(reply.encode());
+                        } else if ("busy".equals(status)) {
+                            sendBusy(response);
+                        } else if (ChunkUploader.STATUS_EXISTS.equals(status)) {
+                            // Another upload to the same id got there first
+                            sendStatus(response, 409);
+                        } else if (ChunkUploader.STATUS_TIMEOUT.equals(status)) {
+                            logger.error("Error uploading file " + id + ": " + reply.getString("message"));
+                            sendStatus(response, 504);
+                        } else {
+                            logger.error("Error uploading file " + id + ": " + reply.getString("message"));
+                            sendStatus(response, 500);
+                        }
+                    }
+                });
+
+        if ("PUT".equals(request.method())) {
+            uploader.upload(request, request.params().get("filename"), request.headers().get("Content-Type"));
+            return;
+        }
+
+        // Only the first file part of a multipart POST is saved
+        final boolean[] started = new boolean[1];
+        request.expectMultiPart(true);
+        request.uploadHandler(new Handler<HttpServerFileUpload>() {
+            @Override
+            public void handle(HttpServerFileUpload upload) {
+                if (started[0]) {
+                    return;
+                }
+                started[0] = true;
+                uploader.upload(upload, upload.filename(), upload.contentType());
+            }
+        });
+        request.endHandler(new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                if (!started[0]) {
+                    sendStatus(response, 400);
+                }
+            }
+        });
+
+    }
+
+    /**
+     * Writes each range segment to the response and requests the next one once the response can take more data.  A
+     * segment waiting for the response to drain is answered with a stop when the connection closes, so the module
+     * does not keep the range open until its reply timeout.
+     */
+    private class SegmentHandler implements Handler<AsyncResult<Message<Object>>> {
+
+        private final HttpServerResponse response;
+        private final String id;
+        private boolean closed;
+        private boolean written;
+        private Message<Object> pending;
+
+        private SegmentHandler(HttpServerResponse response, String id) {
+            this.response = response;
+            this.id = id;
+        }
+
+        /**
+         * Called when the connection closes, stops the range if a segment is waiting for the response to drain
+         */
+        public void close() {
+            closed = true;
+            if (pending != null) {
+                stop(pending);
+            }
+        }
+
+        @Override
+        public void handle(AsyncResult<Message<Object>> result) {
+
+            if (result.failed()) {
+                if (written) {
+                    // The status line has been sent, so the only way to signal the error is to drop the connection
+                    logger.error("Error reading file " + id, result.cause());
+                    response.close();
+                } else {
+                    sendFailure(response, id, result.cause());
+                }
+                return;
+            }
+
+            final Message<Object> message = result.result();
+            Object body = message.body();
+            if (!(body instanceof Buffer)) {
+                if (!written && body instanceof JsonObject && "busy".equals(((JsonObject) body).getString("status"))) {
+                    sendBusy(response);
+                    return;
+                }
+                if (!written) {
+                    logger.error("Error reading file " + id + ": " + body);
+                    sendStatus(response, 500);
+                    return;
+                }
+                // The status line has been sent, so the only way to signal the error is to drop the connection
+                logger.error("Error reading file " + id + ": " + body);
+                response.close();
+                return;
+            }
+
+            if (closed) {
+                stop(message);
+                return;
+            }
+
+            Buffer segment = (Buffer) body;
+            if (segment.length() == 0) {
+                response.end();
+                return;
+            }
+
+            response.write(segment);
+            written = true;
+            if (response.writeQueueFull()) {
+                pending = message;
+                response.drainHandler(new Handler<Void>() {
+                    @Override
+                    public void handle(Void event) {
+                        response.drainHandler(null);
+                        if (pending != null) {
+                            next(pending);
+                        }
+                    }
+                });
+            } else {
+                next(message);
+            }
+
+        }
+
+        private void next(Message<Object> message) {
+            pending = null;
+            if (closed) {
+                stop(message);
+            } else {
+                message.replyWithTimeout(new JsonObject(), timeout, this);
+            }
+        }
+
+        private void stop(Message<Object> message) {
+            pending = null;
+            message.reply(new JsonObject().putBoolean("stop", true));
+        }
+    }
+
+    private boolean isNotModified(HttpServerRequest request, String etag, long uploadDate) {
+
+        String ifNoneMatch = request.headers().get("If-None-Match");
+        if (ifNoneMatch != null) {
+            return matchesEtag(ifNoneMatch, etag);
+        }
+
+        String ifModifiedSince = request.headers().get("If-Modified-Since");
+        if (ifModifiedSince != null) {
+            try {
+                // HTTP dates have second precision
+                return uploadDate / 1000 <= createDateFormat().parse(ifModifiedSince).getTime() / 1000;
+            } catch (ParseException e) {
+                return false;
+            }
+        }
+        return false;
+
+    }
+
+    /**
+     * @param header an If-None-Match header value
+     * @param etag   the quoted file entity tag
+     * @return true if the header matches the entity tag
+     */
+    static boolean matchesEtag(String header, String etag) {
+        for (String value : header.split(",")) {
+            value = value.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses a single byte range.  Multiple ranges and invalid headers are ignored and the whole file is sent.
+     *
+     * @param header the Range header value, may be null
+     * @param length the file length
+     * @return the inclusive first and last byte positions, null to send the whole file, or {@link #UNSATISFIABLE}
+     */
+    static long[] parseRange(String header, long length) {
+
+        if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return null;
+        }
+
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+
+            if (first.isEmpty()) {
+                // Suffix range of the last n bytes
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || length == 0) {
+                    return UNSATISFIABLE;
+                }
+                return new long[]{Math.max(0, length - suffix), length - 1};
+            }
+
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+            if (start < 0 || (!last.isEmpty() && Long.parseLong(last) < start)) {
+                return null;
+            }
+            if (start >= length) {
+                return UNSATISFIABLE;
+            }
+            return new long[]{start, end};
+
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+    }
+
+    /**
+     * Responds to a module request that failed before any of the response was sent
+     */
+    private void sendFailure(HttpServerResponse response, String id, Throwable cause) {
+        logger.error("Error reading file " + id, cause);
+        boolean timedOut = cause instanceof ReplyException
+                && ((ReplyException) cause).failureType() == ReplyFailure.TIMEOUT;
+        sendStatus(response, timedOut ? 504 : 500);
+    }
+
+    private void sendBusy(HttpServerResponse response) {
+        response.headers().set("Retry-After", String.valueOf(retryAfter));
+        sendStatus(response, 503);
+    }
+
+    private void sendStatus(HttpServerResponse response, int statusCode) {
+        response.setStatusCode(statusCode);
+        response.end();
+    }
+
+    private static String formatDate(long time) {
+        return createDateFormat().format(new Date(time));
+    }
+
+    private static SimpleDateFormat createDateFormat() {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format;
+    }
+
+}
@@ -25,9 +25,13 @@ package com.englishtown.vertx;
 
 import com.mongodb.*;
 import com.mongodb.gridfs.GridFS;
-import com.mongodb.gridfs.GridFSDBFile;
 import com.mongodb.util.JSON;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.bson.types.ObjectId;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Future;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.buffer.Buffer;
 import org.vertx.java.core.eventbus.EventBus;
@@ -37,13 +41,23 @@ import org.vertx.java.core.json.JsonObject;
 import org.vertx.java.core.logging.Logger;
 import org.vertx.java.platform.Verticle;
 
-import java.io.UnsupportedEncodingException;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
 
 /**
  * An EventBus module providing MongoDB GridFS functionality
@@ -51,6 +65,41 @@ import java.util.List;
 public class GridFSModule extends Verticle implements Handler<Message<JsonObject>> {
 
     public static final String DEFAULT_ADDRESS = "et.mongo.gridfs";
+    public static final String DEFAULT_WRITE_CONCERN = "ACKNOWLEDGED";
+    public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+    public static final int DEFAULT_LIST_LIMIT = 1000;
+    public static final int DEFAULT_LIST_BATCH_SIZE = 100;
+    public static final int DEFAULT_DELETE_BATCH_SIZE = 1000;
+    public static final int DEFAULT_GET_FILES_BATCH_SIZE = 500;
+
+    /**
+     * The time in milliseconds stop waits for the running handlers of each bulkhead lane
+     */
+    protected static final long SHUTDOWN_TIMEOUT = 10000;
+
+    /**
+     * The admission permit of the request being handled on the current lane thread
+     */
+    private static final ThreadLocal<AdmissionController.Permit> CURRENT_PERMIT = new ThreadLocal<>();
+
+    /**
+     * The main address actions counted against the write in-flight limit, all others except getStats are reads
+     */
+    protected static final Set<String> WRITE_ACTIONS = new HashSet<>(Arrays.asList(
+            "saveFile", "deleteFile", "claimFile", "startUpload", "finishUpload", "abortUpload"));
+
+    /**
+     * The files document fields returned by getFile
+     */
+    protected static final DBObject FILE_INFO_FIELDS = BasicDBObjectBuilder.start()
+            .add("filename", 1)
+            .add("contentType", 1)
+            .add("length", 1)
+            .add("chunkSize", 1)
+            .add("uploadDate", 1)
+            .add("md5", 1)
+            .add("metadata", 1)
+            .get();
 
     protected EventBus eb;
     protected Logger logger;
@@ -64,15 +113,45 @@ public class GridFSModule extends Verticle implements Handler<Message<JsonObject
 
     protected Mongo mongo;
     protected DB db;
+    protected IndexManager indexManager;
+    protected BucketConfig bucketConfig;
+    protected ChunkCoalescer chunkCoalescer;
+    protected final ConcurrentMap<ObjectId, UploadSession> uploads = new ConcurrentHashMap<>();
+    protected int maxUploads;
+    protected long claimTimeout;
+    protected long replyTimeout;
+    protected DigestTracker digestTracker;
+    protected DedupStore dedupStore;
+    protected final ConcurrentMap<String, ChunkCompressor> compressors = new ConcurrentHashMap<>();
+    protected final ConcurrentMap<String, DBCollection> filesCollections = new ConcurrentHashMap<>();
+    protected boolean verifyLength;
+    protected boolean digestReadBack;
+    protected ChunkPrefetcher chunkPrefetcher;
+    protected ChunkCache chunkCache;
+    protected FileInfoCache fileInfoCache;
+    protected FileNameCache fileNameCache;
+    protected boolean broadcastInvalidations;
+    protected OrphanSweeper orphanSweeper;
+    protected Context context;
+    protected AdmissionController admissionController;
+    protected Bulkheads bulkheads;
 
     @Override
     public void start() {
         eb = vertx.eventBus();
+        context = vertx.currentContext();
         logger = container.logger();
 
         JsonObject config = container.config();
         address = config.getString("address", DEFAULT_ADDRESS);
 
+        // The module is a worker, so a message only reaches a handler after waiting in the unbounded worker queue,
+        // and at most a worker pool of messages are ever in progress.  In-flight limits only take effect when the
+        // handler hands messages to bulkhead lanes and returns.
+        if (config.getObject("admission") != null && config.getObject("bulkheads") == null) {
+            throw new IllegalArgumentException("admission requires bulkheads to be configured");
+        }
+
         host = config.getString("host", "localhost");
         port = config.getInteger("port", 27017);
         dbName = config.getString("db_name", "default_db");
@@ -100,17 +179,462 @@ public class GridFSModule extends Verticle implements Handler<Message<JsonObject
             logger.error("Failed to connect to mongo server", e);
         }
 
-        // Main Message<JsonObject> handler that inspects an "action" field
-        eb.registerHandler(address, this);
+        bucketConfig = new BucketConfig(config);
+        dedupStore = new DedupStore(db);
+
+        // Create indexes up front for the configured buckets, others are indexed the first time they are written to
+        indexManager = new IndexManager(db);
+        List<String> buckets = new ArrayList<>();
+        for (String bucket : bucketConfig.getBuckets()) {
+            buckets.add(bucket);
+        }
+        JsonArray bucketNames = config.getArray("buckets");
+        if (bucketNames != null) {
+            for (Object bucket : bucketNames) {
+                buckets.add((String) bucket);
+            }
+        }
+        for (String bucket : buckets) {
+            try {
+                indexManager.ensureIndexes(bucket);
+            } catch (RuntimeException e) {
+                logger.error("Failed to ensure indexes for bucket " + bucket, e);
+            }
+        }
+
+        // Optional write-behind stage that coalesces saveChunk messages into bulk inserts
+        JsonObject writeBehind = config.getObject("write_behind");
+        if (writeBehind != null) {
+            ChunkCoalescer.Writer writer = new ChunkCoalescer.Writer() {
+                @Override
+                public List<String> write(String bucket, String writeConcern, List<DBObject> chunks) {
+                    return insertChunks(bucket, writeConcern, chunks);
+                }
+            };
+            chunkCoalescer = new ChunkCoalescer(vertx, writer,
+                    writeBehind.getInteger("max_chunks", 100),
+                    writeBehind.getLong("max_bytes", 8 * 1024 * 1024),
+                    writeBehind.getLong("max_delay", 10));
+        }
+
+        // Optional content digests computed as chunks are saved
+        JsonObject digest = config.getObject("digest");
+        if (digest != null) {
+            List<String> algorithms = new ArrayList<>();
+            for (Object algorithm : digest.getArray("algorithms", new JsonArray().addString("MD5"))) {
+                algorithms.add((String) algorithm);
+            }
+            digestTracker = new DigestTracker(algorithms, digest.getLong("max_pending_bytes", 4 * 1024 * 1024));
+            verifyLength = digest.getBoolean("verify_length", false);
+            digestReadBack = digest.getBoolean("read_back", false);
+        }
+
+        // Optional off heap cache of chunk data for getChunk
+        JsonObject cache = config.getObject("chunk_cache");
+        if (cache != null) {
+            chunkCache = new ChunkCache(
+                    cache.getLong("max_bytes", 64 * 1024 * 1024),
+                    cache.getInteger("max_chunk_size", 1024 * 1024));
+        }
+
+        // Optional cache of getFile results
+        JsonObject fileCache = config.getObject("file_cache");
+        if (fileCache != null) {
+            fileInfoCache = new FileInfoCache(
+                    fileCache.getInteger("max_entries", 10000),
+                    fileCache.getLong("ttl", 60000),
+                    fileCache.getLong("negative_ttl", 1000));
+            fileNameCache = new FileNameCache(
+                    fileCache.getInteger("max_entries", 10000),
+                    fileCache.getLong("ttl", 60000),
+                    fileCache.getLong("negative_ttl", 1000));
+            broadcastInvalidations = fileCache.getBoolean("broadcast", false);
+        }
+
+        // Optional read ahead for getChunk reply chains
+        JsonObject prefetch = config.getObject("prefetch");
+        if (prefetch != null) {
+            chunkPrefetcher = new ChunkPrefetcher(
+                    prefetch.getInteger("max_chunks", 4),
+                    prefetch.getLong("max_bytes", 16 * 1024 * 1024),
+                    prefetch.getLong("max_total_bytes", 256 * 1024 * 1024),
+                    prefetch.getInteger("max_streams", 100),
+                    prefetch.getInteger("threads", 4),
+                    prefetch.getLong("timeout", 30000));
+            vertx.setPeriodic(1000, new Handler<Long>() {
+                @Override
+                public void handle(Long timerId) {
+                    chunkPrefetcher.expire();
+                }
+            });
+        }
+
+        // Optional background removal of chunks whose files document is gone
+        JsonObject sweeper = config.getObject("orphan_sweeper");
+        if (sweeper != null) {
+            List<String> sweepBuckets = new ArrayList<>();
+            for (Object bucket : sweeper.getArray("buckets", new JsonArray())) {
+                sweepBuckets.add((String) bucket);
+            }
+            if (sweepBuckets.isEmpty()) {
+                sweepBuckets.addAll(buckets.isEmpty() ? Arrays.asList(GridFS.DEFAULT_BUCKET) : buckets);
+            }
+            orphanSweeper = new OrphanSweeper(createSweeperStore(), sweepBuckets,
+                    sweeper.getInteger("batch_size", 100),
+                    sweeper.getInteger("max_chunks_per_second", 1000),
+                    sweeper.getLong("grace_period", 24 * 60 * 60 * 1000),
+                    sweeper.getLong("interval", 60 * 60 * 1000));
+            vertx.setPeriodic(1000, new Handler<Long>() {
+                @Override
+                public void handle(Long timerId) {
+                    try {
+                        orphanSweeper.tick(System.currentTimeMillis());
+                    } catch (RuntimeException e) {
+                        logger.error("Error sweeping orphaned chunks", e);
+                    }
+                }
+            });
+        }
+
+        // Streaming upload sessions and digests are dropped once they have been idle for the upload timeout
+        maxUploads = config.getInteger("max_uploads", 1000);
+        claimTimeout = config.getLong("claim_timeout", 60 * 60 * 1000);
+        replyTimeout = config.getLong("reply_timeout", 5 * 60 * 1000);
+        final long uploadTimeout = config.getLong("upload_timeout", 5 * 60 * 1000);
+        vertx.setPeriodic(Math.max(uploadTimeout / 10, 1000), new Handler<Long>() {
+            @Override
+            public void handle(Long timerId) {
+                expireUploads(uploadTimeout);
+                if (digestTracker != null) {
+                    digestTracker.expire(uploadTimeout);
+                }
+            }
+        });
 
+        // Optional separate lanes for reads, writes and noisy buckets.  Each blocking call holds one connection, so
+        // lane thread counts within pool_size are also connection budgets.  Prefetch reads run on their own threads,
+        // whose connections are budgeted next to the lanes.
+        JsonObject bulkheadConfig = config.getObject("bulkheads");
+        if (bulkheadConfig != null) {
+            int prefetchThreads = prefetch == null ? 0 : prefetch.getInteger("threads", 4);
+            bulkheads = createBulkheads(bulkheadConfig, poolSize, prefetchThreads);
+        }
+
+        // Optional in-flight limits, requests over a limit get an immediate busy reply
+        JsonObject admission = config.getObject("admission");
+        if (admission != null) {
+            admissionController = new AdmissionController(
+                    admission.getInteger("max_in_flight", 512),
+                    createLimiter(admission.getObject("read", new JsonObject()), 100),
+                    createLimiter(admission.getObject("write", new JsonObject()), 250));
+        }
+
+        // Main Message<JsonObject> handler that inspects an "action" field
+        eb.registerHandler(address, admitting(this, null));
         // Message<byte[]> handler to save file chunks
-        eb.registerHandler(address + "/saveChunk", new Handler<Message<Buffer>>() {
+        eb.registerHandler(address + "/saveChunk", admitting(new Handler<Message<Buffer>>() {
             @Override
             public void handle(Message<Buffer> message) {
                 saveChunk(message);
             }
+        }, true));
+
+        // Message<Buffer> handler to save many file chunks with a single insert
+        eb.registerHandler(address + "/saveChunks", admitting(new Handler<Message<Buffer>>() {
+            @Override
+            public void handle(Message<Buffer> message) {
+                saveChunks(message);
+            }
+        }, true));
+
+        // Message<Buffer> handler to append data to a streaming upload
+        eb.registerHandler(address + "/appendData", admitting(new Handler<Message<Buffer>>() {
+            @Override
+            public void handle(Message<Buffer> message) {
+                appendData(message);
+            }
+        }, true));
+
+        // Cache invalidations published by other module instances
+        eb.registerHandler(address + "/invalidate", new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> message) {
+                String bucket = message.body().getString("bucket");
+                String id = message.body().getString("id");
+                String filename = message.body().getString("filename");
+                String previousFilename = message.body().getString("previous_filename");
+                if (bucket != null && id != null && ObjectId.isValid(id)) {
+                    invalidateFile(bucket, new ObjectId(id));
+                }
+                if (bucket != null && filename != null) {
+                    invalidateName(bucket, filename);
+                }
+                if (bucket != null && previousFilename != null) {
+                    invalidateName(bucket, previousFilename);
+                }
+            }
+        });
+
+    }
+
+    @Override
+    public void start(final Future<Void> startedResult) {
+        start();
+
+        // Optional HTTP server for downloads, run as a standard verticle on the event loop
+        JsonObject http = container.config().getObject("http");
+        if (http == null) {
+            startedResult.setResult(null);
+            return;
+        }
+
+        container.deployVerticle(GridFSHttpServer.class.getName(), http.copy().putString("address", address),
+                http.getInteger("instances", 1), new Handler<AsyncResult<String>>() {
+                    @Override
+                    public void handle(AsyncResult<String> result) {
+                        if (result.succeeded()) {
+                            startedResult.setResult(null);
+                        } else {
+                            startedResult.setFailure(result.cause());
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Returns a handler for a reply to a message being handled on an executor thread, which runs the given handler on
+     * the same executor so chained replies stay in the lane of the request that started them.  On any other thread the
+     * handler itself is returned.
+     *
+     * @param handler the handler, may be null
+     */
+    protected <T> Handler<Message<T>> dispatching(final Handler<Message<T>> handler) {
+        final MessageExecutor executor = MessageExecutor.current();
+        if (executor == null || handler == null) {
+            return handler;
+        }
+        return new Handler<Message<T>>() {
+            @Override
+            public void handle(Message<T> message) {
+                if (!executor.execute(message, handler)) {
+                    sendBusy(message);
+                }
+            }
+        };
+    }
+
+    /**
+     * Replies to a message with a handler for the answer, see {@link #reply(Message, Object, Handler, Handler)}.
+     *
+     * @param handler the handler, may be null
+     */
+    protected <T> void reply(Message<?> message, Object body, Handler<Message<T>> handler) {
+        reply(message, body, handler, null);
+    }
+
+    /**
+     * Replies to a message with a handler for the answer, see {@link #dispatching}.  The handler is dropped when no
+     * answer arrives within the reply timeout, so a client that goes away does not leave it registered.  Reply
+     * handlers are registered on the context of the calling thread and executor threads have none, so from an
+     * executor thread the reply is sent from the module context.
+     *
+     * @param handler the handler, may be null
+     * @param timeoutHandler called instead of the handler when no answer arrives in time, may be null
+     */
+    protected <T> void reply(final Message<?> message, final Object body, Handler<Message<T>> handler,
+                             final Handler<Void> timeoutHandler) {
+        if (handler == null) {
+            message.reply(body);
+            return;
+        }
+
+        final Handler<Message<T>> dispatchingHandler = dispatching(handler);
+        final Handler<AsyncResult<Message<T>>> replyHandler = new Handler<AsyncResult<Message<T>>>() {
+            @Override
+            public void handle(AsyncResult<Message<T>> result) {
+                if (result.succeeded()) {
+                    dispatchingHandler.handle(result.result());
+                } else if (timeoutHandler != null) {
+                    timeoutHandler.handle(null);
+                }
+            }
+        };
+
+        if (MessageExecutor.current() == null) {
+            message.replyWithTimeout(body, replyTimeout, replyHandler);
+            return;
+        }
+        context.runOnContext(new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                message.replyWithTimeout(body, replyTimeout, replyHandler);
+            }
         });
+    }
+
+    /**
+     * Returns a handler for new requests that admits them through the admission controller, then runs the given
+     * handler on the bulkhead lane for the request, or on the receiving thread without bulkheads.  The admission
+     * permit is held until the handler returns, so messages queued for a lane count against the limits too.  A handler
+     * that completes the request later takes the permit over with {@link #takePermit}.
+     *
+     * @param handler the handler
+     * @param write   whether the messages are writes, or null to classify main address messages by action
+     */
+    protected <T> Handler<Message<T>> admitting(final Handler<Message<T>> handler, final Boolean write) {
+        if (admissionController == null && bulkheads == null) {
+            return handler;
+        }
+        return new Handler<Message<T>>() {
+            @Override
+            public void handle(Message<T> message) {
+
+                boolean isWrite;
+                if (write == null) {
+                    Object body = message.body();
+                    String action = body instanceof JsonObject ? ((JsonObject) body).getString("action") : null;
+                    if ("getStats".equals(action)) {
+                        // Stats must stay available while the module is overloaded
+                        handler.handle(message);
+                        return;
+                    }
+                    isWrite = WRITE_ACTIONS.contains(action);
+                } else {
+                    isWrite = write;
+                }
+
+                final AdmissionController.Permit permit;
+                if (admissionController == null) {
+                    permit = null;
+                } else {
+                    permit = admissionController.acquire(isWrite);
+                    if (permit == null) {
+                        sendBusy(message);
+                        return;
+                    }
+                }
+
+                Handler<Message<T>> admitted = handler;
+                if (permit != null) {
+                    admitted = new Handler<Message<T>>() {
+                        @Override
+                        public void handle(Message<T> message) {
+                            CURRENT_PERMIT.set(permit);
+                            try {
+                                handler.handle(message);
+                            } finally {
+                                AdmissionController.Permit held = takePermit();
+                                if (held != null) {
+                                    held.release();
+                                }
+                            }
+                        }
+                    };
+                }
+
+                MessageExecutor executor = null;
+                if (bulkheads != null) {
+                    String bucket = bulkheads.hasBucketLanes() ? getMessageBucket(message.body()) : null;
+                    executor = bulkheads.select(bucket, isWrite);
+                }
+
+                if (executor == null) {
+                    admitted.handle(message);
+                } else if (!executor.execute(message, admitted)) {
+                    if (permit != null) {
+                        permit.cancel();
+                    }
+                    sendBusy(message);
+                }
+            }
+        };
+    }
+
+    /**
+     * Takes over the admission permit of the request being handled on the current thread, so it is not released when
+     * the handler returns.  The caller must release it once the request completes.
+     *
+     * @return the permit, or null if the request holds none
+     */
+    protected AdmissionController.Permit takePermit() {
+        AdmissionController.Permit permit = CURRENT_PERMIT.get();
+        CURRENT_PERMIT.remove();
+        return permit;
+    }
+
+    /**
+     * Returns the bucket a message is for, from the JSON body or the JSON header of a Buffer body.  Messages for a
+     * streaming upload only carry the upload id, so the bucket comes from the upload session.
+     *
+     * @return the bucket, or null if the message cannot be parsed
+     */
+    protected String getMessageBucket(Object body) {
+
+        JsonObject jsonObject;
+        if (body instanceof JsonObject) {
+            jsonObject = (JsonObject) body;
+        } else if (body instanceof Buffer) {
+            try {
+                ByteBuf buffer = ((Buffer) body).getByteBuf();
+                jsonObject = decodeJson(buffer, 4, buffer.getInt(0));
+            } catch (RuntimeException e) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+
+        String bucket = jsonObject.getString("bucket");
+        if (bucket != null) {
+            return bucket;
+        }
+        String id = jsonObject.getString("id");
+        UploadSession session = id != null && ObjectId.isValid(id) ? uploads.get(new ObjectId(id)) : null;
+        return session != null ? session.getBucket() : GridFS.DEFAULT_BUCKET;
+    }
+
+    /**
+     * @param prefetchThreads the number of prefetch read threads, which use connections outside the lanes
+     */
+    private Bulkheads createBulkheads(JsonObject config, int poolSize, int prefetchThreads) {
+
+        JsonObject read = config.getObject("read", new JsonObject());
+        JsonObject write = config.getObject("write", new JsonObject());
+        int readThreads = read.getInteger("threads", Math.max(1, poolSize / 2));
+        int writeThreads = write.getInteger("threads", Math.max(1, poolSize / 4));
+        int threads = readThreads + writeThreads;
+
+        Map<String, MessageExecutor> bucketLanes = new HashMap<>();
+        JsonObject buckets = config.getObject("buckets", new JsonObject());
+        for (String bucket : buckets.getFieldNames()) {
+            JsonObject lane = buckets.getObject(bucket);
+            int laneThreads = lane.getInteger("threads", 1);
+            bucketLanes.put(bucket, createLane("gridfs-" + bucket, laneThreads, lane));
+            threads += laneThreads;
+        }
+
+        if (threads + prefetchThreads > poolSize) {
+            logger.warn("Bulkhead lanes have " + threads + " threads and prefetch has " + prefetchThreads
+                    + " but pool_size is " + poolSize + ", lanes will wait on each other for connections");
+        }
+
+        return new Bulkheads(
+                createLane("gridfs-read", readThreads, read),
+                createLane("gridfs-write", writeThreads, write),
+                bucketLanes);
+    }
+
+    private MessageExecutor createLane(String name, int threads, JsonObject config) {
+        return new MessageExecutor(logger, name, threads, config.getInteger("max_queued", 1000));
+    }
 
+    private AdmissionController.Limiter createLimiter(JsonObject config, long targetLatency) {
+        Number backoff = config.getNumber("backoff");
+        return new AdmissionController.Limiter(
+                config.getInteger("min_in_flight", 8),
+                config.getInteger("max_in_flight", 256),
+                config.getLong("target_latency", targetLatency),
+                backoff == null ? 0.9 : backoff.doubleValue());
     }
 
     private List<ServerAddress> makeSeeds(JsonArray seedsProperty) throws UnknownHostException {
@@ -126,6 +650,21 @@ public class GridFSModule extends Verticle implements Handler<Message<JsonObject
 
     @Override
     public void stop() {
+        if (bulkheads != null) {
+            // Messages that never got a lane thread are answered rather than left to time out
+            for (Message<?> message : bulkheads.shutdown(SHUTDOWN_TIMEOUT)) {
+                sendBusy(message);
+            }
+        }
+        if (chunkCoalescer != null) {
+            chunkCoalescer.flushAll();
+        }
+        if (chunkPrefetcher != null) {
+            chunkPrefetcher.shutdown();
+        }
+        if (chunkCache != null) {
+            chunkCache.clear();
+        }
         mongo.close();
     }
 
@@ -146,9 +685,45 @@ public class GridFSModule extends Verticle implements Handler<Message<JsonObject
                 case "getChunk":
                     getChunk(message, jsonObject);
                     break;
+                case "getFiles":
+                    getFiles(message, jsonObject);
+                    break;
+                case "getFileByName":
+                    getFileByName(message, jsonObject);
+                    break;
+                case "getRange":
+                    getRange(message, jsonObject);
+                    break;
+                case "listFiles":
+                    listFiles(message, jsonObject);
+                    break;
+                case "getChunks":
+                    getChunks(message, jsonObject);
+                    break;
+                case "getMissingChunks":
+                    getMissingChunks(message, jsonObject);
+                    break;
+                case "getStats":
+                    getStats(message);
+                    break;
+                case "deleteFile":
+                    deleteFile(message, jsonObject);
+                    break;
                 case "saveFile":
                     saveFile(message, jsonObject);
                     break;
+                case "claimFile":
+                    claimFile(message, jsonObject);
+                    break;
+                case "startUpload":
+                    startUpload(message, jsonObject);
+                    break;
+                case "finishUpload":
+                    finishUpload(message, jsonObject);
+                    break;
+                case "abortUpload":
+                    abortUpload(message, jsonObject);
+                    break;
                 default:
                     sendError(message, "action " + action + " is not supported");
             }
@@ -165,7 +740,7 @@ public class GridFSModule extends Verticle implements Handler<Message<JsonObject
             return;
         }
 
-        Integer length = getRequiredInt("length", message, jsonObject, 1);
+        Long length = getRequiredLong("length", message, jsonObject, 0);
         if (length == null) {
             return;
         }
@@ -184,29 +759,53 @@ public class GridFSModule extends Verticle implements Handler<Message<JsonObject
         String contentType = jsonObject.getString("contentType");
         JsonObject metadata = jsonObject.getObject("metadata");
 
-        try {
-            BasicDBObjectBuilder builder = BasicDBObjectBuilder.start()
-                    .add("_id", id)
-                    .add("length", length)
-                    .add("chunkSize", chunkSize)
-                    .add("uploadDate", new Date(uploadDate));
+        ObjectId claim = null;
+        if (jsonObject.getString("claim") != null) {
+            claim = getObjectId(message, jsonObject, "claim");
+            if (claim == null) {
+                return;
+            }
+        }
 
-            if (filename != null) builder.add("filename", filename);
-            if (contentType != null) builder.add("contentType", contentType);
-            if (metadata != null) builder.add("metadata", JSON.parse(metadata.encode()));
+        String bucket = jsonObject.getString("bucket", GridFS.DEFAULT_BUCKET);
+        String writeConcern = getWriteConcern(message, jsonObject, bucket);
+        if (writeConcern == null) {
+            return;
+        }
 
-            DBObject dbObject = builder.get();
+        try {
+            if (claim != null && !holdsClaim(bucket, id, claim)) {
+                sendError(message, "Claim not held: " + id.toString());
+                return;
+            }
 
-            String bucket = jsonObject.getString("bucket", GridFS.DEFAULT_BUCKET);
-            DBCollection collection = db.getCollection(bucket + ".files");
+            DBObject dbObject = createFileDocument(id, length, chunkSize, uploadDate, filename, contentType, metadata);
+            JsonObject reply = new JsonObject().putString("writeConcern", writeConcern);
 
-            // Ensure standard indexes as long as collection is small
-            if (collection.count() < 1000) {
-                collection.ensureIndex(BasicDBObjectBuilder.start().add("filename", 1).add("uploadDate", 1).get());
+            if (digestTracker != null) {
+                DigestTracker.Result digest = getDigest(bucket, id, length);
+                if (verifyLength && digest != null && digest.getLength() != length) {
+                    sendError(message, "length " + length + " does not match the " + digest.getLength()
+                            + " bytes received");
+                    return;
+                }
+                addDigests(digest, dbObject, reply);
             }
 
-            collection.save(dbObject);
-            sendOK(message);
+            if (claim == null) {
+                saveFileDocument(bucket, writeConcern, dbObject);
+            } else {
+                // A claimed upload only ever creates the file, it never replaces one saved under the id
+                try {
+                    insertFileDocument(bucket, writeConcern, dbObject);
+                } catch (MongoException.DuplicateKey e) {
+                    sendError(message, "File exists: " + id.toString());
+                    return;
+                } finally {
+                    releaseClaim(bucket, id, claim);
+                }
+            }
+            sendOK(message, reply);
 
         } catch (Exception e) {
             sendError(message, "Error saving file", e);
@@ -214,144 +813,1777 @@ public class GridFSModule extends Verticle implements Handler<Message<JsonObject
     }
 
     /**
-     * Handler for saving file chunks.
-     *
-     * @param message The message body is a Buffer where the first four bytes are an int indicating how many bytes are
-     *                the json fields, the remaining bytes are the file chunk to write to MongoDB
+     * Claims a file id for one upload before any of its chunks are written.  The claim is a document keyed by the id,
+     * so of two uploads to the same id only one gets it.  Chunks left under the id by an earlier upload are removed
+     * once the claim is held, and only the holder may save the file or remove its chunks.
      */
-    public void saveChunk(Message<Buffer> message) {
-
-        JsonObject jsonObject;
-        byte[] data;
-
-        // Parse the byte[] message body
-        try {
-            Buffer body = message.body();
-
-            // First four bytes indicate the json string length
-            int len = body.getInt(0);
-
-            // Decode json
-            int from = 4;
-            byte[] jsonBytes = body.getBytes(from, from + len);
-            jsonObject = new JsonObject(decode(jsonBytes));
+    public void claimFile(Message<JsonObject> message, JsonObject jsonObject) {
 
-            // Remaining bytes are the chunk to be written
-            from += len;
-            data = body.getBytes(from, body.length());
-
-        } catch (RuntimeException e) {
-            sendError(message, "error parsing byte[] message.  see the documentation for the correct format", e);
+        ObjectId id = getObjectId(message, jsonObject, "id");
+        if (id == null) {
             return;
         }
 
-        // Now save the chunk
-        saveChunk(message, jsonObject, data);
-
-    }
-
-    public void saveChunk(Message<Buffer> message, JsonObject jsonObject, byte[] data) {
-
-        if (data == null || data.length == 0) {
-            sendError(message, "chunk data is missing");
+        String bucket = jsonObject.getString("bucket", GridFS.DEFAULT_BUCKET);
+        ObjectId claim = new ObjectId();
+        if (!acquireClaim(bucket, id, claim)) {
+            sendError(message, "File is being uploaded: " + id.toString());
             return;
         }
 
-        ObjectId id = getObjectId(message, jsonObject, "files_id");
-        if (id == null) {
+        // Checked once the claim is held, since a claimed upload saves its file before releasing the claim
+        if (getFilesCollection(bucket).findOne(new BasicDBObject("_id", id), new BasicDBObject("_id", 1)) != null) {
+            releaseClaim(bucket, id, claim);
+            sendError(message, "File exists: " + id.toString());
             return;
         }
 
-        Integer n = getRequiredInt("n", message, jsonObject, 0);
-        if (n == null) {
-            return;
+        long chunks = 0;
+        int removed;
+        while ((removed = removeChunks(bucket, id, DEFAULT_DELETE_BATCH_SIZE)) > 0) {
+            chunks += removed;
         }
 
-        try {
-            DBObject dbObject = BasicDBObjectBuilder.start()
-                    .add("files_id", id)
-                    .add("n", n)
-                    .add("data", data).get();
+        sendOK(message, new JsonObject()
+                .putString("claim", claim.toString())
+                .putNumber("chunks", chunks));
 
-            String bucket = jsonObject.getString("bucket", GridFS.DEFAULT_BUCKET);
-            DBCollection collection = db.getCollection(bucket + ".chunks");
-
-            // Ensure standard indexes as long as collection is small
-            if (collection.count() < 1000) {
-                collection.ensureIndex(
-                        BasicDBObjectBuilder.start().add("files_id", 1).add("n", 1).get(),
-                        BasicDBObjectBuilder.start().add("unique", 1).get());
-            }
+    }
 
-            collection.save(dbObject);
-            sendOK(message);
+    /**
+     * Inserts the claim document for a file id.  A claim left by an upload that never finished is taken over once it
+     * is older than the claim timeout.
+     *
+     * @return true if the claim is now held
+     */
+    protected boolean acquireClaim(String bucket, ObjectId id, ObjectId claim) {
+
+        DBCollection collection = db.getCollection(bucket + ".claims");
+        long now = System.currentTimeMillis();
+        DBObject document = BasicDBObjectBuilder.start()
+                .add("_id", id)
+                .add("claim", claim)
+                .add("expires", new Date(now + claimTimeout))
+                .get();
 
-        } catch (RuntimeException e) {
-            sendError(message, "Error saving chunk", e);
+        try {
+            collection.insert(document, WriteConcern.ACKNOWLEDGED);
+            return true;
+        } catch (MongoException.DuplicateKey e) {
+            DBObject expired = BasicDBObjectBuilder.start()
+                    .add("_id", id)
+                    .add("expires", new BasicDBObject("$lt", new Date(now)))
+                    .get();
+            return collection.findAndModify(expired, null, null, false, document, false, false) != null;
         }
 
     }
 
-    public void getFile(Message<JsonObject> message, JsonObject jsonObject) {
+    protected boolean holdsClaim(String bucket, ObjectId id, ObjectId claim) {
+        DBObject query = BasicDBObjectBuilder.start().add("_id", id).add("claim", claim).get();
+        return db.getCollection(bucket + ".claims").findOne(query) != null;
+    }
 
-        ObjectId objectId = getObjectId(message, jsonObject, "id");
-        if (objectId == null) {
-            return;
-        }
+    protected void releaseClaim(String bucket, ObjectId id, ObjectId claim) {
+        DBObject query = BasicDBObjectBuilder.start().add("_id", id).add("claim", claim).get();
+        db.getCollection(bucket + ".claims").remove(query, WriteConcern.ACKNOWLEDGED);
+    }
 
-        // Optional bucket, default is "fs"
-        String bucket = jsonObject.getString("bucket", GridFS.DEFAULT_BUCKET);
-        GridFS files = new GridFS(db, bucket);
+    /**
+     * Returns the digest tracked while the file chunks were saved.  A complete digest whose length differs from the
+     * file length is returned when verify_length is enabled, so the file can be rejected.  If this module instance did
+     * not see every chunk, or too many arrived out of order, the digest is computed by reading the chunks back when
+     * read_back is enabled, otherwise null is returned.
+     */
+    private DigestTracker.Result getDigest(String bucket, ObjectId id, long length) {
 
-        GridFSDBFile file = files.findOne(objectId);
-        if (file == null) {
-            sendError(message, "File does not exist: " + objectId.toString());
-            return;
+        DigestTracker.Result digest = digestTracker.finish(id);
+        if (digest != null && (digest.getLength() == length || verifyLength)) {
+            return digest;
         }
-
-        JsonObject fileInfo = new JsonObject()
-                .putString("filename", file.getFilename())
-                .putString("contentType", file.getContentType())
-                .putNumber("length", file.getLength())
-                .putNumber("chunkSize", file.getChunkSize())
-                .putNumber("uploadDate", file.getUploadDate().getTime());
-
-        DBObject metadata = file.getMetaData();
-        if (metadata != null) {
-            fileInfo.putObject("metadata", new JsonObject(JSON.serialize(metadata)));
+        if (!digestReadBack) {
+            return null;
         }
 
-        // Send file info
-        sendOK(message, fileInfo);
+        Map<String, MessageDigest> digests = digestTracker.createDigests();
+        long received = 0;
+
+        DBCursor cursor = db.getCollection(bucket + ".chunks")
+                .find(new BasicDBObject("files_id", id), BasicDBObjectBuilder.start()
+                        .add("n", 1)
+                        .add("data", 1)
+                        .add("compression", 1)
+                        .add("length", 1)
+                        .add(DedupStore.BLOB_FIELD, 1)
+                        .get())
+                .sort(BasicDBObjectBuilder.start().add("files_id", 1).add("n", 1).get());
+        try {
+            while (cursor.hasNext()) {
+                byte[] data = getChunkData(bucket, cursor.next());
+                for (MessageDigest messageDigest : digests.values()) {
+                    messageDigest.update(data);
+                }
+                received += data.length;
+            }
+        } finally {
+            cursor.close();
+        }
 
+        return new DigestTracker.Result(digests, received);
     }
 
-    public void getChunk(Message<JsonObject> message, final JsonObject jsonObject) {
+    private void addDigests(DigestTracker.Result digest, DBObject dbObject, JsonObject reply) {
+        if (digest == null) {
+            reply.putBoolean("digestSkipped", true);
+            return;
+        }
+        for (Map.Entry<String, String> entry : digest.getDigests().entrySet()) {
+            dbObject.put(entry.getKey(), entry.getValue());
+            reply.putString(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Called once a chunk document has been written
+     */
+    protected void chunkSaved(DBObject chunk) {
+        if (digestTracker != null) {
+            digestTracker.update((ObjectId) chunk.get("files_id"), (Integer) chunk.get("n"),
+                    (ByteBuf) chunk.get("data"));
+        }
+    }
+
+    protected DBObject createFileDocument(ObjectId id, long length, int chunkSize, long uploadDate, String filename,
+                                          String contentType, JsonObject metadata) {
+
+        BasicDBObjectBuilder builder = BasicDBObjectBuilder.start()
+                .add("_id", id)
+                .add("length", length)
+                .add("chunkSize", chunkSize)
+                .add("uploadDate", new Date(uploadDate));
+
+        if (filename != null) builder.add("filename", filename);
+        if (contentType != null) builder.add("contentType", contentType);
+        if (metadata != null) builder.add("metadata", JSON.parse(metadata.encode()));
+
+        return builder.get();
+    }
+
+    /**
+     * Saves a files document, replacing any file with the same id.  The name of a replaced file is looked up first
+     * when file names are cached, so its getFileByName results are dropped as well.
+     */
+    protected void saveFileDocument(String bucket, String writeConcern, DBObject dbObject) {
+        indexManager.ensureFilesIndex(bucket);
+        DBCollection collection = getFilesCollection(bucket);
+        ObjectId id = (ObjectId) dbObject.get("_id");
+
+        String previousFilename = null;
+        if (fileNameCache != null || broadcastInvalidations) {
+            DBObject previous = collection.findOne(new BasicDBObject("_id", id), new BasicDBObject("filename", 1));
+            if (previous != null) {
+                previousFilename = (String) previous.get("filename");
+            }
+        }
+
+        collection.save(dbObject, WriteConcern.valueOf(writeConcern));
+        fileChanged(bucket, id, (String) dbObject.get("filename"), previousFilename);
+    }
+
+    /**
+     * Saves a new files document
+     *
+     * @throws MongoException.DuplicateKey if a file with the id exists
+     */
+    protected void insertFileDocument(String bucket, String writeConcern, DBObject dbObject) {
+        indexManager.ensureFilesIndex(bucket);
+        DBCollection collection = getFilesCollection(bucket);
+        collection.insert(dbObject, WriteConcern.valueOf(writeConcern));
+        fileChanged(bucket, (ObjectId) dbObject.get("_id"), (String) dbObject.get("filename"));
+    }
+
+    /**
+     * Drops cached data for a file after it has been written or deleted
+     */
+    protected void invalidateFile(String bucket, ObjectId id) {
+        if (chunkCache != null) {
+            chunkCache.invalidate(bucket, id);
+        }
+        if (fileInfoCache != null) {
+            fileInfoCache.invalidate(bucket, id);
+        }
+    }
+
+    /**
+     * Drops cached getFileByName results for a file name, since saving a file with the name shifts its revisions
+     */
+    protected void invalidateName(String bucket, String filename) {
+        if (fileNameCache != null) {
+            fileNameCache.invalidate(bucket, filename);
+        }
+    }
+
+    /**
+     * Drops cached data for a file on this instance, and on other instances when broadcast is configured
+     *
+     * @param filename the file name, may be null
+     */
+    protected void fileChanged(String bucket, ObjectId id, String filename) {
+        fileChanged(bucket, id, filename, null);
+    }
+
+    /**
+     * Drops cached data for a file that may have been renamed
+     *
+     * @param filename the file name, may be null
+     * @param previousFilename the name of the file it replaced, may be null
+     */
+    protected void fileChanged(String bucket, ObjectId id, String filename, String previousFilename) {
+        if (previousFilename != null && previousFilename.equals(filename)) {
+            previousFilename = null;
+        }
+        invalidateFile(bucket, id);
+        if (filename != null) {
+            invalidateName(bucket, filename);
+        }
+        if (previousFilename != null) {
+            invalidateName(bucket, previousFilename);
+        }
+        if (broadcastInvalidations) {
+            JsonObject message = new JsonObject()
+                    .putString("bucket", bucket)
+                    .putString("id", id.toString());
+            if (filename != null) {
+                message.putString("filename", filename);
+            }
+            if (previousFilename != null) {
+                message.putString("previous_filename", previousFilename);
+            }
+            eb.publish(address + "/invalidate", message);
+        }
+    }
+
+    public void startUpload(Message<JsonObject> message, JsonObject jsonObject) {
+
+        Integer chunkSize = getRequiredInt("chunkSize", message, jsonObject, 1);
+        if (chunkSize == null) {
+            return;
+        }
+
+        ObjectId id = new ObjectId();
+        if (jsonObject.getString("id") != null) {
+            id = getObjectId(message, jsonObject, "id");
+            if (id == null) {
+                return;
+            }
+        }
+
+        String bucket = jsonObject.getString("bucket", GridFS.DEFAULT_BUCKET);
+        String writeConcern = getWriteConcern(message, jsonObject, bucket);
+        if (writeConcern == null) {
+            return;
+        }
+
+        if (uploads.size() >= maxUploads) {
+            sendError(message, "too many uploads in progress");
+            return;
+        }
+
+        UploadSession session = new UploadSession(id, bucket, chunkSize, jsonObject.getString("filename"),
+                jsonObject.getString("contentType"), jsonObject.getObject("metadata"), writeConcern);
+
+        if (uploads.putIfAbsent(id, session) != null) {
+            sendError(message, "upload " + id + " is already in progress");
+            return;
+        }
+
+        sendOK(message, new JsonObject().putString("id", id.toString()));
+
+    }
+
+    /**
+     * Handler for appending data to a streaming upload.
+     *
+     * @param message The message body is a Buffer where the first four bytes are an int indicating how many bytes are
+     *                the json fields, the remaining bytes are the data to append
+     */
+    public void appendData(Message<Buffer> message) {
+
+        JsonObject jsonObject;
+        ByteBuf data;
+
+        try {
+            ByteBuf body = message.body().getByteBuf();
+            int len = body.getInt(0);
+            jsonObject = decodeJson(body, 4, len);
+            data = body.slice(4 + len, body.writerIndex() - 4 - len);
+
+        } catch (RuntimeException e) {
+            sendError(message, "error parsing byte[] message.  see the documentation for the correct format", e);
+            return;
+        }
+
+        UploadSession session = getUploadSession(message, jsonObject);
+        if (session == null) {
+            return;
+        }
+
+        synchronized (session) {
+            Long offset = jsonObject.getLong("offset");
+            if (offset != null && offset != session.getLength()) {
+                sendError(message, "offset " + offset + " does not match the uploaded length " + session.getLength());
+                return;
+            }
+
+            try {
+                List<DBObject> chunks = session.append(data);
+                if (!chunks.isEmpty() && !saveUploadChunks(session, chunks)) {
+                    sendError(message, "Error saving chunk");
+                    return;
+                }
+                sendOK(message, new JsonObject().putNumber("length", session.getLength()));
+
+            } catch (RuntimeException e) {
+                uploads.remove(session.getId());
+                sendError(message, "Error saving chunk", e);
+            }
+        }
+
+    }
+
+    public void finishUpload(Message<JsonObject> message, JsonObject jsonObject) {
+
+        UploadSession session = getUploadSession(message, jsonObject);
+        if (session == null) {
+            return;
+        }
+
+        synchronized (session) {
+            // Another finish or abort may have completed while waiting for the session
+            if (!uploads.remove(session.getId(), session)) {
+                sendError(message, "upload " + session.getId() + " is not in progress");
+                return;
+            }
+
+            try {
+                DBObject last = session.finish();
+                if (last != null && !saveUploadChunks(session, Collections.singletonList(last))) {
+                    sendError(message, "Error saving chunk");
+                    return;
+                }
+
+                DBObject dbObject = createFileDocument(session.getId(), session.getLength(), session.getChunkSize(),
+                        System.currentTimeMillis(), session.getFilename(), session.getContentType(),
+                        session.getMetadata());
+                JsonObject reply = new JsonObject()
+                        .putString("id", session.getId().toString())
+                        .putNumber("length", session.getLength())
+                        .putString("writeConcern", session.getWriteConcern());
+
+                if (digestTracker != null) {
+                    addDigests(getDigest(session.getBucket(), session.getId(), session.getLength()), dbObject, reply);
+                }
+
+                saveFileDocument(session.getBucket(), session.getWriteConcern(), dbObject);
+                sendOK(message, reply);
+
+            } catch (RuntimeException e) {
+                sendError(message, "Error saving file", e);
+            }
+        }
+
+    }
+
+    public void abortUpload(Message<JsonObject> message, JsonObject jsonObject) {
+
+        UploadSession session = getUploadSession(message, jsonObject);
+        if (session == null) {
+            return;
+        }
+
+        uploads.remove(session.getId(), session);
+        if (digestTracker != null) {
+            digestTracker.remove(session.getId());
+        }
+        sendOK(message);
+
+    }
+
+    private <T> UploadSession getUploadSession(Message<T> message, JsonObject jsonObject) {
+
+        ObjectId id = getObjectId(message, jsonObject, "id");
+        if (id == null) {
+            return null;
+        }
+
+        UploadSession session = uploads.get(id);
+        if (session == null) {
+            sendError(message, "upload " + id + " is not in progress");
+        }
+        return session;
+
+    }
+
+    private boolean saveUploadChunks(UploadSession session, List<DBObject> chunks) {
+
+        List<String> errors = insertChunks(session.getBucket(), session.getWriteConcern(), chunks);
+        for (int i = 0; i < errors.size(); i++) {
+            if (errors.get(i) != null) {
+                // Chunk data has already left the session so the upload cannot continue
+                uploads.remove(session.getId(), session);
+                if (digestTracker != null) {
+                    digestTracker.remove(session.getId());
+                }
+                return false;
+            }
+            chunkSaved(chunks.get(i));
+        }
+        return true;
+
+    }
+
+    private void expireUploads(long uploadTimeout) {
+        long expired = System.currentTimeMillis() - uploadTimeout;
+        for (UploadSession session : uploads.values()) {
+            if (session.getLastAccess() < expired && uploads.remove(session.getId(), session)) {
+                logger.warn("Upload " + session.getId() + " expired after " + uploadTimeout + "ms idle");
+            }
+        }
+    }
+
+    /**
+     * Handler for saving file chunks.
+     *
+     * @param message The message body is a Buffer where the first four bytes are an int indicating how many bytes are
+     *                the json fields, the remaining bytes are the file chunk to write to MongoDB
+     */
+    public void saveChunk(Message<Buffer> message) {
+
+        JsonObject jsonObject;
+        ByteBuf data;
+
+        // Parse the byte[] message body straight from the underlying netty buffer
+        try {
+            ByteBuf body = message.body().getByteBuf();
+
+            // First four bytes indicate the json string length
+            int len = body.getInt(0);
+
+            // Decode json
+            int from = 4;
+            jsonObject = decodeJson(body, from, len);
+
+            // Remaining bytes are the chunk to be written, sliced without copying
+            from += len;
+            data = body.slice(from, body.writerIndex() - from);
+
+        } catch (RuntimeException e) {
+            sendError(message, "error parsing byte[] message.  see the documentation for the correct format", e);
+            return;
+        }
+
+        // Now save the chunk
+        saveChunk(message, jsonObject, data);
+
+    }
+
+    public void saveChunk(Message<Buffer> message, JsonObject jsonObject, byte[] data) {
+        saveChunk(message, jsonObject, data == null ? null : Unpooled.wrappedBuffer(data));
+    }
+
+    public void saveChunk(Message<Buffer> message, JsonObject jsonObject, ByteBuf data) {
+
+        if (data == null || !data.isReadable()) {
+            sendError(message, "chunk data is missing");
+            return;
+        }
+
+        ObjectId id = getObjectId(message, jsonObject, "files_id");
+        if (id == null) {
+            return;
+        }
+
+        Integer n = getRequiredInt("n", message, jsonObject, 0);
+        if (n == null) {
+            return;
+        }
+
+        String bucket = jsonObject.getString("bucket", GridFS.DEFAULT_BUCKET);
+        final String writeConcern = getWriteConcern(message, jsonObject, bucket);
+        if (writeConcern == null) {
+            return;
+        }
+
+        try {
+            final DBObject dbObject = BasicDBObjectBuilder.start()
+                    .add("files_id", id)
+                    .add("n", n)
+                    .add("data", data).get();
+
+            if (chunkCoalescer != null) {
+                // Reply once the batch holding this chunk has been written, the request stays in flight until then
+                final Message<Buffer> chunkMessage = message;
+                final AdmissionController.Permit permit = takePermit();
+                chunkCoalescer.add(bucket, writeConcern, dbObject, data.readableBytes(), new Handler<String>() {
+                    @Override
+                    public void handle(String error) {
+                        try {
+                            if (error == null) {
+                                chunkSaved(dbObject);
+                                sendOK(chunkMessage, new JsonObject().putString("writeConcern", writeConcern));
+                            } else {
+                                sendError(chunkMessage, error);
+                            }
+                        } finally {
+                            if (permit != null) {
+                                permit.release();
+                            }
+                        }
+                    }
+                });
+                return;
+            }
+
+            indexManager.ensureChunksIndex(bucket);
+            DBCollection collection = getChunksCollection(bucket);
+
+            try {
+                DBObject body = getChunkBody(bucket, dbObject);
+                DBObject stored = toStoredChunk(bucket, dbObject, body);
+                collection.insert(stored, WriteConcern.valueOf(writeConcern));
+                referenceContent(bucket, stored, body);
+            } catch (MongoException.DuplicateKey e) {
+                sendError(message, getChunkError(dbObject, e));
+                return;
+            } finally {
+                invalidateFile(bucket, id);
+            }
+            chunkSaved(dbObject);
+            sendOK(message, new JsonObject().putString("writeConcern", writeConcern));
+
+        } catch (RuntimeException e) {
+            sendError(message, "Error saving chunk", e);
+        }
+
+    }
+
+    /**
+     * Handler for saving many file chunks with a single bulk insert.
+     *
+     * @param message The message body is a Buffer starting with a four byte int length and a json header, followed by
+     *                any number of chunk records.  Each record is a four byte int length and the json fields for the
+     *                chunk, then a four byte int length and the chunk bytes.
+     */
+    public void saveChunks(Message<Buffer> message) {
+
+        JsonObject header;
+        List<JsonObject> fields = new ArrayList<>();
+        List<ByteBuf> chunks = new ArrayList<>();
+
+        // Parse the byte[] message body straight from the underlying netty buffer
+        try {
+            ByteBuf body = message.body().getByteBuf();
+
+            // Header json applies to every chunk in the message
+            int len = body.getInt(0);
+            int from = 4;
+            header = decodeJson(body, from, len);
+            from += len;
+
+            // Remaining bytes are the chunk records, chunk bytes are sliced without copying
+            while (from < body.writerIndex()) {
+                len = body.getInt(from);
+                from += 4;
+                fields.add(decodeJson(body, from, len));
+                from += len;
+
+                len = body.getInt(from);
+                from += 4;
+                chunks.add(body.slice(from, len));
+                from += len;
+            }
+
+        } catch (RuntimeException e) {
+            sendError(message, "error parsing byte[] message.  see the documentation for the correct format", e);
+            return;
+        }
+
+        if (chunks.isEmpty()) {
+            sendError(message, "chunks are missing");
+            return;
+        }
+
+        // Now save the chunks
+        saveChunks(message, header, fields, chunks);
+
+    }
+
+    public void saveChunks(Message<Buffer> message, JsonObject header, List<JsonObject> fields, List<ByteBuf> chunks) {
+
+        String bucket = header.getString("bucket", GridFS.DEFAULT_BUCKET);
+        String writeConcern = getWriteConcern(message, header, bucket);
+        if (writeConcern == null) {
+            return;
+        }
+
+        JsonArray results = new JsonArray();
+        List<DBObject> dbObjects = new ArrayList<>();
+        List<JsonObject> pending = new ArrayList<>();
+        boolean failed = false;
+
+        // Validate each chunk record, invalid records are reported without failing the rest of the batch
+        for (int i = 0; i < chunks.size(); i++) {
+            JsonObject jsonObject = fields.get(i);
+            ByteBuf data = chunks.get(i);
+            JsonObject result = new JsonObject().putNumber("index", i);
+            results.addObject(result);
+
+            String error;
+            try {
+                error = validateChunk(jsonObject, data);
+            } catch (RuntimeException e) {
+                error = "invalid chunk fields: " + e.getMessage();
+            }
+            if (error != null) {
+                result.putString("status", "error").putString("message", error);
+                failed = true;
+                continue;
+            }
+
+            result.putString("files_id", jsonObject.getString("files_id")).putNumber("n", jsonObject.getInteger("n"));
+            dbObjects.add(BasicDBObjectBuilder.start()
+                    .add("files_id", new ObjectId(jsonObject.getString("files_id")))
+                    .add("n", jsonObject.getInteger("n"))
+                    .add("data", data).get());
+            pending.add(result);
+        }
+
+        if (!dbObjects.isEmpty()) {
+            List<String> errors;
+            try {
+                errors = insertChunks(bucket, writeConcern, dbObjects);
+            } catch (RuntimeException e) {
+                sendError(message, "Error saving chunks", e);
+                return;
+            }
+
+            for (int i = 0; i < errors.size(); i++) {
+                String error = errors.get(i);
+                if (error == null) {
+                    chunkSaved(dbObjects.get(i));
+                    pending.get(i).putString("status", "ok");
+                } else {
+                    pending.get(i).putString("status", "error").putString("message", error);
+                    failed = true;
+                }
+            }
+        }
+
+        JsonObject reply = new JsonObject().putArray("results", results).putString("writeConcern", writeConcern);
+        if (failed) {
+            reply.putString("status", "error").putString("message", "one or more chunks failed to save");
+            message.reply(reply);
+        } else {
+            sendOK(message, reply);
+        }
+
+    }
+
+    /**
+     * Writes chunk documents with a single bulk insert.  If the insert fails the batch may have been partially
+     * written, so each chunk is retried individually to find out which chunks actually failed.
+     *
+     * @param bucket       the GridFS bucket
+     * @param writeConcern the write concern name
+     * @param chunks       the chunk documents to write
+     * @return an error message per chunk, null entries are chunks that were saved
+     */
+    protected List<String> insertChunks(String bucket, String writeConcern, List<DBObject> chunks) {
+        try {
+            return writeChunks(bucket, writeConcern, chunks);
+        } finally {
+            // Even a failed write may have replaced some chunks
+            if (chunkCache != null) {
+                Set<ObjectId> ids = new HashSet<>();
+                for (DBObject chunk : chunks) {
+                    ids.add((ObjectId) chunk.get("files_id"));
+                }
+                for (ObjectId id : ids) {
+                    chunkCache.invalidate(bucket, id);
+                }
+            }
+        }
+    }
+
+    private List<String> writeChunks(String bucket, String writeConcern, List<DBObject> chunks) {
+
+        indexManager.ensureChunksIndex(bucket);
+        DBCollection collection = getChunksCollection(bucket);
+        WriteConcern concern = WriteConcern.valueOf(writeConcern);
+        List<String> errors = new ArrayList<>(chunks.size());
+
+        List<DBObject> bodies = new ArrayList<>(chunks.size());
+        List<DBObject> dbObjects = new ArrayList<>(chunks.size());
+        for (DBObject chunk : chunks) {
+            DBObject body = getChunkBody(bucket, chunk);
+            bodies.add(body);
+            dbObjects.add(toStoredChunk(bucket, chunk, body));
+        }
+
+        boolean inserted = false;
+        try {
+            collection.insert(dbObjects, concern);
+            for (int i = 0; i < dbObjects.size(); i++) {
+                errors.add(null);
+            }
+            inserted = true;
+
+        } catch (RuntimeException e) {
+            logger.warn("Bulk chunk insert failed, retrying chunks individually", e);
+        }
+
+        // Insert rather than upsert, so a duplicate chunk is reported the same way as by a single saveChunk
+        for (int i = 0; !inserted && i < dbObjects.size(); i++) {
+            DBObject dbObject = dbObjects.get(i);
+            try {
+                collection.insert(dbObject, concern);
+                errors.add(null);
+            } catch (MongoException.DuplicateKey e) {
+                // The bulk insert may have written this very document before it failed
+                DBObject written = collection.findOne(new BasicDBObject("_id", dbObject.get("_id")),
+                        new BasicDBObject("_id", 1));
+                if (written != null) {
+                    errors.add(null);
+                } else {
+                    errors.add(getChunkError(dbObject, e));
+                }
+            } catch (RuntimeException e) {
+                logger.error("Error saving chunk", e);
+                errors.add(getChunkError(dbObject, e));
+            }
+        }
+
+        // Content references are only taken for chunks that were written
+        for (int i = 0; i < dbObjects.size(); i++) {
+            if (errors.get(i) == null) {
+                try {
+                    referenceContent(bucket, dbObjects.get(i), bodies.get(i));
+                } catch (RuntimeException e) {
+                    logger.error("Error storing chunk content", e);
+                    errors.set(i, getChunkError(dbObjects.get(i), e));
+                }
+            }
+        }
+
+        return errors;
+    }
+
+    /**
+     * @return the error message for a failed chunk write
+     */
+    private String getChunkError(DBObject chunk, RuntimeException e) {
+        if (e instanceof MongoException.DuplicateKey) {
+            return "chunk " + chunk.get("n") + " of file " + chunk.get("files_id") + " already exists";
+        }
+        return "Error saving chunk: " + e.getMessage();
+    }
+
+    /**
+     * Returns the data fields of a chunk as they are stored.  For buckets with compression the data is compressed
+     * and marked with the codec and original length.
+     *
+     * @param bucket the GridFS bucket
+     * @param chunk  the chunk document with its data, which is left unchanged
+     * @return the data fields to store
+     */
+    protected DBObject getChunkBody(String bucket, DBObject chunk) {
+
+        ByteBuf data = getChunkBuffer(chunk);
+        ChunkCompressor compressor = getCompressor(bucket);
+        byte[] compressed = compressor == null ? null : compressor.compress(data);
+
+        DBObject body = new BasicDBObject();
+        if (compressed == null) {
+            body.put("data", data);
+        } else {
+            body.put("data", compressed);
+            body.put("compression", compressor.getCodec());
+            body.put("length", data.readableBytes());
+        }
+        return body;
+    }
+
+    /**
+     * Returns the chunk document as it is stored in the bucket.  For buckets in dedup mode the chunk document
+     * references its body by hash, and the body is only added to the content store by {@link #referenceContent} once
+     * the chunk document has been written.
+     *
+     * @param bucket the GridFS bucket
+     * @param chunk  the chunk document with its data, which is left unchanged
+     * @param body   the data fields returned by {@link #getChunkBody}
+     * @return the chunk document to write
+     */
+    protected DBObject toStoredChunk(String bucket, DBObject chunk, DBObject body) {
+
+        DBObject stored = BasicDBObjectBuilder.start()
+                .add("files_id", chunk.get("files_id"))
+                .add("n", chunk.get("n"))
+                .get();
+
+        if (bucketConfig.getBoolean(bucket, "dedup", false)) {
+            stored.put(DedupStore.BLOB_FIELD, dedupStore.hash(getChunkBuffer(chunk)));
+        } else {
+            stored.putAll(body);
+        }
+
+        return stored;
+    }
+
+    /**
+     * Adds the content store reference of a chunk document that has been written.  If the reference cannot be added
+     * the chunk document is removed again, as it could not be read.
+     *
+     * @param bucket the GridFS bucket
+     * @param stored the written chunk document returned by {@link #toStoredChunk}
+     * @param body   the data fields returned by {@link #getChunkBody}
+     */
+    protected void referenceContent(String bucket, DBObject stored, DBObject body) {
+
+        String hash = (String) stored.get(DedupStore.BLOB_FIELD);
+        if (hash == null) {
+            return;
+        }
+
+        try {
+            dedupStore.store(bucket, hash, body);
+        } catch (RuntimeException e) {
+            getChunksCollection(bucket).remove(new BasicDBObject("_id", stored.get("_id")));
+            throw e;
+        }
+    }
+
+    private ByteBuf getChunkBuffer(DBObject chunk) {
+        Object value = chunk.get("data");
+        return value instanceof ByteBuf ? (ByteBuf) value : Unpooled.wrappedBuffer((byte[]) value);
+    }
+
+    /**
+     * Returns the data of a stored chunk document, resolving chunks that reference the content store and
+     * decompressing compressed chunks
+     *
+     * @param bucket the GridFS bucket
+     * @param chunk  the stored chunk document
+     * @return the chunk data
+     */
+    protected byte[] getChunkData(String bucket, DBObject chunk) {
+
+        DBObject body = chunk;
+        String hash = (String) chunk.get(DedupStore.BLOB_FIELD);
+        if (hash != null) {
+            body = dedupStore.load(bucket, hash);
+            if (body == null) {
+                throw new IllegalStateException("chunk " + chunk.get("n") + " of file " + chunk.get("files_id")
+                        + " references missing content " + hash);
+            }
+        }
+
+        byte[] data = (byte[]) body.get("data");
+        String codec = (String) body.get("compression");
+        if (codec == null) {
+            return data;
+        }
+        return ChunkCompressor.decompress(codec, data, ((Number) body.get("length")).intValue());
+    }
+
+    /**
+     * @param bucket the GridFS bucket
+     * @return the compressor for the bucket, or null if the bucket is not compressed
+     */
+    protected ChunkCompressor getCompressor(String bucket) {
+        ChunkCompressor compressor = compressors.get(bucket);
+        if (compressor == null) {
+            JsonObject compression = bucketConfig.getObject(bucket, "compression");
+            if (compression == null) {
+                return null;
+            }
+            compressor = ChunkCompressor.create(compression);
+            compressors.putIfAbsent(bucket, compressor);
+        }
+        return compressor;
+    }
+
+    private String validateChunk(JsonObject jsonObject, ByteBuf data) {
+        if (data == null || !data.isReadable()) {
+            return "chunk data is missing";
+        }
+        String id = jsonObject.getString("files_id");
+        if (id == null) {
+            return "files_id must be specified";
+        }
+        if (!ObjectId.isValid(id)) {
+            return "files_id " + id + " is not a valid ObjectId";
+        }
+        Integer n = jsonObject.getInteger("n");
+        if (n == null) {
+            return "n must be specified";
+        }
+        if (n < 0) {
+            return "n must be greater than or equal to 0";
+        }
+        return null;
+    }
+
+    public void getFile(Message<JsonObject> message, JsonObject jsonObject) {
+
+        ObjectId objectId = getObjectId(message, jsonObject, "id");
+        if (objectId == null) {
+            return;
+        }
+
+        // Optional bucket, default is "fs"
+        String bucket = jsonObject.getString("bucket", GridFS.DEFAULT_BUCKET);
+
+        JsonObject fileInfo = findFileInfo(bucket, objectId);
+        if (fileInfo == null) {
+            sendError(message, "File does not exist: " + objectId.toString());
+            return;
+        }
+
+        // Send file info
+        sendOK(message, fileInfo);
+
+    }
+
+    public void getFiles(Message<JsonObject> message, JsonObject jsonObject) {
+
+        JsonArray idArray = jsonObject.getArray("ids");
+        if (idArray == null) {
+            sendError(message, "ids must be specified");
+            return;
+        }
+
+        int batchSize = jsonObject.getInteger("batch_size", DEFAULT_GET_FILES_BATCH_SIZE);
+        if (batchSize < 1) {
+            sendError(message, "batch_size must be greater than or equal to 1");
+            return;
+        }
+
+        Set<String> requested = getRequestedFields(message, jsonObject);
+        if (requested == null) {
+            return;
+        }
+
+        Set<ObjectId> ids = new LinkedHashSet<>();
+        for (Object value : idArray) {
+            if (!(value instanceof String) || !ObjectId.isValid((String) value)) {
+                sendError(message, "id " + value + " is not a valid ObjectId");
+                return;
+            }
+            ids.add(new ObjectId((String) value));
+        }
+
+        String bucket = jsonObject.getString("bucket", GridFS.DEFAULT_BUCKET);
+        JsonObject files = new JsonObject();
+
+        // Cached files are answered directly, the cache versions of the rest are taken before they are queried
+        List<ObjectId> pending = new ArrayList<>();
+        Map<ObjectId, Long> versions = new HashMap<>();
+        for (ObjectId id : ids) {
+            if (fileInfoCache != null) {
+                FileInfoCache.Entry entry = fileInfoCache.get(bucket, id);
+                if (entry != null) {
+                    JsonObject fileInfo = entry.getFileInfo();
+                    files.putObject(id.toString(), fileInfo == null ? null : projectFileInfo(fileInfo, requested));
+                    continue;
+                }
+                versions.put(id, fileInfoCache.getVersion(bucket, id));
+            }
+            pending.add(id);
+        }
+
+        // Without a cache to fill, only the requested fields are read
+        DBObject fields = FILE_INFO_FIELDS;
+        if (fileInfoCache == null) {
+            fields = new BasicDBObject();
+            for (String field : requested) {
+                fields.put(field, 1);
+            }
+        }
+
+        DBCollection collection = getFilesCollection(bucket);
+        for (int from = 0; from < pending.size(); from += batchSize) {
+            List<ObjectId> batch = pending.subList(from, Math.min(from + batchSize, pending.size()));
+
+            Map<ObjectId, JsonObject> found = new HashMap<>();
+            DBCursor cursor = collection.find(new BasicDBObject("_id", new BasicDBObject("$in", batch)), fields);
+            try {
+                while (cursor.hasNext()) {
+                    DBObject file = cursor.next();
+                    found.put((ObjectId) file.get("_id"), toFileInfo(file));
+                }
+            } finally {
+                cursor.close();
+            }
+
+            // Missing files get an explicit null entry
+            for (ObjectId id : batch) {
+                JsonObject fileInfo = found.get(id);
+                if (fileInfoCache != null) {
+                    fileInfoCache.put(bucket, id, fileInfo, versions.get(id));
+                }
+                files.putObject(id.toString(), fileInfo == null ? null : projectFileInfo(fileInfo, requested));
+            }
+        }
+
+        sendOK(message, new JsonObject().putObject("files", files));
+
+    }
+
+    /**
+     * Looks up the getFile information for a file, from the file cache when it is configured
+     *
+     * @return the file information, or null if the file does not exist
+     */
+    protected JsonObject findFileInfo(String bucket, ObjectId id) {
+
+        long version = 0;
+        if (fileInfoCache != null) {
+            FileInfoCache.Entry entry = fileInfoCache.get(bucket, id);
+            if (entry != null) {
+                return entry.getFileInfo();
+            }
+            version = fileInfoCache.getVersion(bucket, id);
+        }
+
+        // Query the files collection directly, new GridFS(db, bucket) runs count and index commands on every call
+        DBObject file = getFilesCollection(bucket).findOne(new BasicDBObject("_id", id), FILE_INFO_FIELDS);
+        JsonObject fileInfo = file == null ? null : toFileInfo(file);
+
+        if (fileInfoCache != null) {
+            fileInfoCache.put(bucket, id, fileInfo, version);
+        }
+        return fileInfo;
+
+    }
+
+    public void getFileByName(Message<JsonObject> message, JsonObject jsonObject) {
+
+        String filename = getRequiredString("filename", message, jsonObject);
+        if (filename == null) {
+            return;
+        }
+
+        // Revisions count from 0 for the oldest, or back from -1 for the latest
+        int revision = jsonObject.getInteger("revision", -1);
+        String bucket = jsonObject.getString("bucket", GridFS.DEFAULT_BUCKET);
+
+        JsonObject fileInfo = findFileInfoByName(bucket, filename, revision);
+        if (fileInfo == null) {
+            sendError(message, "File does not exist: " + filename + " revision " + revision);
+            return;
+        }
+
+        sendOK(message, fileInfo);
+
+    }
+
+    /**
+     * Resolves a file name revision, from the file name cache when it is configured
+     *
+     * @return the file information with its id, or null if the revision does not exist
+     */
+    protected JsonObject findFileInfoByName(String bucket, String filename, int revision) {
+
+        long version = 0;
+        if (fileNameCache != null) {
+            FileInfoCache.Entry entry = fileNameCache.get(bucket, filename, revision);
+            if (entry != null) {
+                return entry.getFileInfo();
+            }
+            version = fileNameCache.getVersion(bucket, filename);
+        }
+
+        // Walk the {filename, uploadDate} index from the oldest or newest end so only the selected document is read
+        indexManager.ensureFilesIndex(bucket);
+        DBCursor cursor = getFilesCollection(bucket)
+                .find(new BasicDBObject("filename", filename), FILE_INFO_FIELDS)
+                .sort(new BasicDBObject("uploadDate", revision >= 0 ? 1 : -1))
+                .hint(IndexManager.FILES_INDEX)
+                .skip(revision >= 0 ? revision : -revision - 1)
+                .limit(-1);
+
+        JsonObject fileInfo = null;
+        try {
+            if (cursor.hasNext()) {
+                DBObject file = cursor.next();
+                fileInfo = toFileInfo(file).putString("id", file.get("_id").toString());
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (fileNameCache != null) {
+            fileNameCache.put(bucket, filename, revision, fileInfo, version);
+        }
+        return fileInfo;
+
+    }
+
+    public void listFiles(Message<JsonObject> message, JsonObject jsonObject) {
+
+        String bucket = jsonObject.getString("bucket", GridFS.DEFAULT_BUCKET);
+
+        String sort = jsonObject.getString("sort", "_id");
+        if (!"_id".equals(sort) && !"uploadDate".equals(sort)) {
+            sendError(message, "sort must be _id or uploadDate");
+            return;
+        }
+
+        int limit = jsonObject.getInteger("limit", DEFAULT_LIST_LIMIT);
+        if (limit < 1) {
+            sendError(message, "limit must be greater than or equal to 1");
+            return;
+        }
+
+        int batchSize = jsonObject.getInteger("batch_size", DEFAULT_LIST_BATCH_SIZE);
+        if (batchSize < 1) {
+            sendError(message, "batch_size must be greater than or equal to 1");
+            return;
+        }
+
+        Set<String> requested = getRequestedFields(message, jsonObject);
+        if (requested == null) {
+            return;
+        }
+
+        DBObject query;
+        try {
+            query = buildListQuery(jsonObject.getObject("filter", new JsonObject()));
+        } catch (IllegalArgumentException e) {
+            sendError(message, e.getMessage());
+            return;
+        }
+
+        String after = jsonObject.getString("after");
+        if (after != null && parseListCursor(sort, after) == null) {
+            sendError(message, "after is not a valid " + sort + " cursor: " + after);
+            return;
+        }
+
+        // The keyset sort must be backed by an index, or every page would sort the whole filtered set
+        if ("uploadDate".equals(sort)) {
+            indexManager.ensureUploadDateIndex(bucket);
+        }
+
+        sendFileBatch(message, bucket, query, requested, sort, after, limit, batchSize);
+
+    }
+
+    /**
+     * Reads the optional "fields" array of getFile fields to return
+     *
+     * @return the requested fields, all of them if the array is not present, or null if an error reply was sent
+     */
+    private <T> Set<String> getRequestedFields(Message<T> message, JsonObject jsonObject) {
+        JsonArray fields = jsonObject.getArray("fields");
+        Set<String> requested = new HashSet<>();
+        if (fields == null) {
+            requested.addAll(FILE_INFO_FIELDS.keySet());
+            return requested;
+        }
+        for (Object field : fields) {
+            if (!FILE_INFO_FIELDS.containsField(String.valueOf(field))) {
+                sendError(message, "field " + field + " is not supported");
+                return null;
+            }
+            requested.add(String.valueOf(field));
+        }
+        return requested;
+    }
+
+    /**
+     * Removes the file information fields that were not requested
+     *
+     * @return the same file information object
+     */
+    private static JsonObject projectFileInfo(JsonObject fileInfo, Set<String> requested) {
+        for (String field : FILE_INFO_FIELDS.keySet()) {
+            if (!requested.contains(field)) {
+                fileInfo.removeField(field);
+            }
+        }
+        return fileInfo;
+    }
+
+    /**
+     * Builds the files query for a listFiles filter
+     *
+     * @param filter the listFiles filter
+     * @return the files query
+     * @throws IllegalArgumentException if the filter has an unsupported or invalid field
+     */
+    protected static DBObject buildListQuery(JsonObject filter) {
+
+        BasicDBObject query = new BasicDBObject();
+
+        for (String name : filter.getFieldNames()) {
+            Object value = filter.getField(name);
+            switch (name) {
+                case "filename":
+                case "contentType":
+                    if (!(value instanceof String)) {
+                        throw new IllegalArgumentException("filter " + name + " must be a string");
+                    }
+                    query.put(name, value);
+                    break;
+                case "filename_prefix":
+                    if (!(value instanceof String)) {
+                        throw new IllegalArgumentException("filter " + name + " must be a string");
+                    }
+                    // An anchored prefix with no regex syntax is answered from the {filename, uploadDate} index bounds
+                    query.put("filename", Pattern.compile("^" + escapeRegex((String) value)));
+                    break;
+                case "uploaded_after":
+                case "uploaded_before":
+                    if (!(value instanceof Number)) {
+                        throw new IllegalArgumentException("filter " + name + " must be a number of milliseconds");
+                    }
+                    Object range = query.get("uploadDate");
+                    BasicDBObject uploadDate = range instanceof BasicDBObject ? (BasicDBObject) range : new BasicDBObject();
+                    uploadDate.put("uploaded_after".equals(name) ? "$gte" : "$lt", new Date(((Number) value).longValue()));
+                    query.put("uploadDate", uploadDate);
+                    break;
+                case "metadata":
+                    if (!(value instanceof JsonObject)) {
+                        throw new IllegalArgumentException("filter metadata must be an object");
+                    }
+                    DBObject metadata = (DBObject) JSON.parse(((JsonObject) value).encode());
+                    for (String key : metadata.keySet()) {
+                        query.put("metadata." + key, metadata.get(key));
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("filter " + name + " is not supported");
+            }
+        }
+
+        return query;
+    }
+
+    /**
+     * Escapes regex syntax so a file name prefix is matched literally
+     */
+    protected static String escapeRegex(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ("\\^$.|?*+()[]{}".indexOf(c) >= 0) {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parses a listFiles cursor.  An _id cursor is the last file id, an uploadDate cursor is
+     * {@code <uploadDate millis>_<id>}.
+     *
+     * @return the cursor as {uploadDate, _id} (uploadDate is null for an _id cursor), or null if it is not valid
+     */
+    protected static Object[] parseListCursor(String sort, String cursor) {
+        if ("_id".equals(sort)) {
+            return ObjectId.isValid(cursor) ? new Object[]{null, new ObjectId(cursor)} : null;
+        }
+        int separator = cursor.indexOf('_');
+        if (separator < 1 || !ObjectId.isValid(cursor.substring(separator + 1))) {
+            return null;
+        }
+        try {
+            Date uploadDate = new Date(Long.parseLong(cursor.substring(0, separator)));
+            return new Object[]{uploadDate, new ObjectId(cursor.substring(separator + 1))};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Replies with the next batch of a listing and chains a reply handler for the batch after it.  Each batch is its
+     * own query resumed from the last key sent, so no server cursor is held open between batches and a deep page
+     * costs the same as the first.
+     */
+    private <T> void sendFileBatch(Message<T> message, final String bucket, final DBObject query,
+                                   final Set<String> requested, final String sort, String after,
+                                   final int remaining, final int batchSize) {
+
+        DBObject batchQuery = query;
+        if (after != null) {
+            Object[] key = parseListCursor(sort, after);
+            DBObject keyset;
+            if (key[0] == null) {
+                keyset = new BasicDBObject("_id", new BasicDBObject("$gt", key[1]));
+            } else {
+                keyset = new BasicDBObject("$or", Arrays.asList(
+                        new BasicDBObject("uploadDate", new BasicDBObject("$gt", key[0])),
+                        new BasicDBObject("uploadDate", key[0]).append("_id", new BasicDBObject("$gt", key[1]))));
+            }
+            batchQuery = query.keySet().isEmpty() ? keyset : new BasicDBObject("$and", Arrays.asList(query, keyset));
+        }
+
+        DBObject sortBy = "_id".equals(sort)
+                ? new BasicDBObject("_id", 1)
+                : new BasicDBObject("uploadDate", 1).append("_id", 1);
+
+        // One extra document is read to tell whether anything follows this batch
+        int size = Math.min(batchSize, remaining);
+        DBCursor cursor = getFilesCollection(bucket)
+                .find(batchQuery, FILE_INFO_FIELDS)
+                .sort(sortBy)
+                .limit(size + 1);
+
+        JsonArray files = new JsonArray();
+        String last = null;
+        boolean hasMore = false;
+
+        try {
+            while (cursor.hasNext()) {
+                DBObject file = cursor.next();
+                if (files.size() == size) {
+                    hasMore = true;
+                    break;
+                }
+
+                JsonObject fileInfo = projectFileInfo(toFileInfo(file), requested);
+                files.addObject(fileInfo.putString("id", file.get("_id").toString()));
+
+                Date uploadDate = (Date) file.get("uploadDate");
+                last = "_id".equals(sort)
+                        ? file.get("_id").toString()
+                        : (uploadDate == null ? 0 : uploadDate.getTime()) + "_" + file.get("_id");
+            }
+        } finally {
+            cursor.close();
+        }
+
+        final int left = remaining - files.size();
+        JsonObject reply = new JsonObject().putArray("files", files);
+
+        if (!hasMore || left == 0) {
+            // The limit was reached with files left over, so hand back a cursor for the next page
+            if (hasMore) {
+                reply.putString("next", last);
+            }
+            sendOK(message, reply.putBoolean("more", false));
+            return;
+        }
+
+        final String batchEnd = last;
+        reply.putString("status", "ok").putBoolean("more", true);
+        reply(message, reply, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> next) {
+                if (next.body() != null && next.body().getBoolean("stop", false)) {
+                    return;
+                }
+                sendFileBatch(next, bucket, query, requested, sort, batchEnd, left, batchSize);
+            }
+        });
+
+    }
+
+    public void deleteFile(Message<JsonObject> message, JsonObject jsonObject) {
+
+        ObjectId id = getObjectId(message, jsonObject, "id");
+        if (id == null) {
+            return;
+        }
+
+        String bucket = jsonObject.getString("bucket", GridFS.DEFAULT_BUCKET);
+        String writeConcern = getWriteConcern(message, jsonObject, bucket);
+        if (writeConcern == null) {
+            return;
+        }
+
+        int batchSize = jsonObject.getInteger("batch_size", DEFAULT_DELETE_BATCH_SIZE);
+        if (batchSize < 1) {
+            sendError(message, "batch_size must be greater than or equal to 1");
+            return;
+        }
+
+        // Only the upload holding the claim on the id may remove the chunks it left behind
+        boolean orphaned = jsonObject.getBoolean("orphaned", false);
+        ObjectId claim = null;
+        if (orphaned) {
+            claim = getObjectId(message, jsonObject, "claim");
+            if (claim == null) {
+                return;
+            }
+            if (!holdsClaim(bucket, id, claim)) {
+                sendError(message, "Claim not held: " + id.toString());
+                return;
+            }
+        }
+
+        // The files document goes first so readers stop finding the file before its chunks start to disappear
+        DBCollection collection = getFilesCollection(bucket);
+        DBObject query = new BasicDBObject("_id", id);
+        DBObject file = collection.findOne(query, new BasicDBObject("filename", 1));
+        if (file != null && orphaned) {
+            releaseClaim(bucket, id, claim);
+            sendError(message, "File exists: " + id.toString());
+            return;
+        }
+        if (file != null) {
+            collection.remove(query, WriteConcern.valueOf(writeConcern));
+            fileChanged(bucket, id, (String) file.get("filename"));
+        }
+
+        // Chunks left by an earlier partial delete are removed even if the files document is already gone
+        long chunks = 0;
+        int removed;
+        while ((removed = removeChunks(bucket, id, batchSize)) > 0) {
+            chunks += removed;
+        }
+        if (orphaned) {
+            releaseClaim(bucket, id, claim);
+        }
+
+        if (file == null && chunks == 0) {
+            sendError(message, "File does not exist: " + id.toString());
+            return;
+        }
+
+        sendOK(message, new JsonObject().putNumber("chunks", chunks));
+
+    }
+
+    /**
+     * Deletes up to max chunks of a file, releasing the content store references of dedup chunks
+     *
+     * @param bucket  the GridFS bucket
+     * @param filesId the chunk files_id
+     * @param max     the maximum number of chunks to delete
+     * @return the number of chunks deleted, 0 once none are left
+     */
+    protected int removeChunks(String bucket, ObjectId filesId, int max) {
+
+        indexManager.ensureChunksIndex(bucket);
+        DBCollection collection = db.getCollection(bucket + ".chunks");
+        DBCursor cursor = collection
+                .find(new BasicDBObject("files_id", filesId), new BasicDBObject(DedupStore.BLOB_FIELD, 1))
+                .sort(IndexManager.CHUNKS_INDEX)
+                .hint(IndexManager.CHUNKS_INDEX)
+                .limit(max);
+
+        List<Object> ids = new ArrayList<>();
+        Map<Object, String> blobs = new HashMap<>();
+        try {
+            while (cursor.hasNext()) {
+                DBObject chunk = cursor.next();
+                String hash = (String) chunk.get(DedupStore.BLOB_FIELD);
+                if (hash == null) {
+                    ids.add(chunk.get("_id"));
+                } else {
+                    blobs.put(chunk.get("_id"), hash);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        int removed = 0;
+        if (!ids.isEmpty()) {
+            removed += collection.remove(new BasicDBObject("_id", new BasicDBObject("$in", ids)),
+                    WriteConcern.ACKNOWLEDGED).getN();
+        }
+
+        // Dedup chunks are removed one at a time so a reference is only released by whoever removed the chunk
+        for (Map.Entry<Object, String> entry : blobs.entrySet()) {
+            if (collection.remove(new BasicDBObject("_id", entry.getKey()), WriteConcern.ACKNOWLEDGED).getN() > 0) {
+                dedupStore.release(bucket, entry.getValue());
+                removed++;
+            }
+        }
+
+        if (removed > 0 && chunkCache != null) {
+            chunkCache.invalidate(bucket, filesId);
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the {@link OrphanSweeper} database access, reading the chunk files_id values from the {files_id, n}
+     * index
+     */
+    protected OrphanSweeper.Store createSweeperStore() {
+        return new OrphanSweeper.Store() {
+            @Override
+            public List<ObjectId> nextFileIds(String bucket, ObjectId after, int limit) {
+                // Each distinct files_id is one covered index seek past the previous one, however many chunks it has
+                indexManager.ensureChunksIndex(bucket);
+                DBCollection collection = db.getCollection(bucket + ".chunks");
+                List<ObjectId> ids = new ArrayList<>();
+                while (ids.size() < limit) {
+                    DBObject chunk = collection.findOne(
+                            new BasicDBObject("files_id", new BasicDBObject("$gt", after)),
+                            BasicDBObjectBuilder.start().add("files_id", 1).add("_id", 0).get(),
+                            IndexManager.CHUNKS_INDEX);
+                    if (chunk == null) {
+                        break;
+                    }
+                    after = (ObjectId) chunk.get("files_id");
+                    ids.add(after);
+                }
+                return ids;
+            }
+
+            @Override
+            public Set<ObjectId> existingFiles(String bucket, List<ObjectId> ids) {
+                Set<ObjectId> existing = new HashSet<>();
+                DBCursor cursor = getFilesCollection(bucket).find(
+                        new BasicDBObject("_id", new BasicDBObject("$in", ids)), new BasicDBObject("_id", 1));
+                try {
+                    while (cursor.hasNext()) {
+                        existing.add((ObjectId) cursor.next().get("_id"));
+                    }
+                } finally {
+                    cursor.close();
+                }
+                return existing;
+            }
 
-        ObjectId id = getObjectId(message, jsonObject, "files_id");
+            @Override
+            public long lastChunkTime(String bucket, ObjectId filesId) {
+                // Chunk ids are generated by the driver when the chunk is inserted, so the newest id is the last write
+                DBCursor cursor = db.getCollection(bucket + ".chunks")
+                        .find(new BasicDBObject("files_id", filesId), new BasicDBObject("_id", 1))
+                        .sort(new BasicDBObject("_id", -1))
+                        .limit(1);
+                try {
+                    Object id = cursor.hasNext() ? cursor.next().get("_id") : null;
+                    return id instanceof ObjectId ? ((ObjectId) id).getTime() : Long.MAX_VALUE;
+                } finally {
+                    cursor.close();
+                }
+            }
 
-        Integer n = getRequiredInt("n", message, jsonObject, 0);
-        if (n == null) {
+            @Override
+            public int removeChunks(String bucket, ObjectId filesId, int max) {
+                return GridFSModule.this.removeChunks(bucket, filesId, max);
+            }
+        };
+    }
+
+    public void getRange(Message<JsonObject> message, JsonObject jsonObject) {
+
+        ObjectId id = getObjectId(message, jsonObject, "id");
+        if (id == null) {
+            return;
+        }
+
+        Long offset = jsonObject.getLong("offset");
+        if (offset == null) {
+            sendError(message, "offset must be specified");
+            return;
+        }
+        if (offset < 0) {
+            sendError(message, "offset must be greater than or equal to 0");
+            return;
+        }
+
+        Long length = jsonObject.getLong("length");
+        if (length != null && length < 0) {
+            sendError(message, "length must be greater than or equal to 0");
+            return;
+        }
+
+        Integer segmentSize = jsonObject.getInteger("segment_size", DEFAULT_SEGMENT_SIZE);
+        if (segmentSize < 1) {
+            sendError(message, "segment_size must be greater than or equal to 1");
             return;
         }
 
         String bucket = jsonObject.getString("bucket", GridFS.DEFAULT_BUCKET);
+        JsonObject fileInfo = findFileInfo(bucket, id);
+        if (fileInfo == null) {
+            sendError(message, "File does not exist: " + id.toString());
+            return;
+        }
 
-        DBCollection collection = db.getCollection(bucket + ".chunks");
-        DBObject dbObject = BasicDBObjectBuilder
+        long fileLength = fileInfo.getLong("length");
+        if (offset > fileLength) {
+            sendError(message, "offset " + offset + " is beyond the end of the file");
+            return;
+        }
+        long end = length == null ? fileLength : Math.min(fileLength, offset + length);
+
+        sendRange(message, bucket, id, fileInfo.getInteger("chunkSize"), offset, end, segmentSize);
+
+    }
+
+    /**
+     * Replies with the range bytes from position up to one segment, and chains a reply handler for the next segment.
+     * An empty Buffer is sent once the end of the range is reached.
+     */
+    private <T> void sendRange(Message<T> message, final String bucket, final ObjectId id, final int chunkSize,
+                               final long position, final long end, final int segmentSize) {
+
+        if (position >= end) {
+            message.reply(new Buffer(0));
+            return;
+        }
+
+        // Only the chunks overlapping this segment are read, with one cursor
+        int first = (int) (position / chunkSize);
+        int last = (int) ((end - 1) / chunkSize);
+        int count = Math.min(last - first + 1, Math.max(1, segmentSize / chunkSize));
+
+        DBObject query = BasicDBObjectBuilder
                 .start("files_id", id)
-                .add("n", n)
+                .push("n").add("$gte", first).add("$lt", first + count).pop()
                 .get();
 
-        DBObject result = collection.findOne(dbObject);
+        indexManager.ensureChunksIndex(bucket);
+        DBCursor cursor = db.getCollection(bucket + ".chunks")
+                .find(query)
+                .sort(new BasicDBObject("n", 1))
+                .hint(IndexManager.CHUNKS_INDEX);
 
-        if (result == null) {
-            message.reply(new byte[0]);
+        Buffer buffer = new Buffer((int) Math.min(end - position, (long) count * chunkSize));
+        long next = position;
+        int expected = first;
+
+        try {
+            while (cursor.hasNext()) {
+                DBObject chunk = cursor.next();
+                int n = ((Number) chunk.get("n")).intValue();
+                if (n != expected) {
+                    break;
+                }
+
+                // Trim the bytes before the range start in the first chunk and after the range end in the last
+                byte[] data = getChunkData(bucket, chunk);
+                long chunkStart = (long) n * chunkSize;
+                int from = (int) (next - chunkStart);
+                int to = (int) Math.min(data.length, end - chunkStart);
+                if (from < 0 || to <= from) {
+                    break;
+                }
+
+                buffer.appendBytes(data, from, to - from);
+                next = chunkStart + to;
+                expected++;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (expected != first + count) {
+            sendError(message, "chunk " + expected + " of file " + id + " is missing or too short");
+            return;
+        }
+
+        final long segmentEnd = next;
+        reply(message, buffer, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                if (reply.body() != null && reply.body().getBoolean("stop", false)) {
+                    return;
+                }
+                sendRange(reply, bucket, id, chunkSize, segmentEnd, end, segmentSize);
+            }
+        });
+
+    }
+
+    /**
+     * Maps a files document to the getFile reply fields
+     *
+     * @param file the files document, with at least the {@link #FILE_INFO_FIELDS}
+     * @return the file information
+     */
+    protected static JsonObject toFileInfo(DBObject file) {
+
+        JsonObject fileInfo = new JsonObject()
+                .putString("filename", (String) file.get("filename"))
+                .putString("contentType", (String) file.get("contentType"));
+
+        Object length = file.get("length");
+        if (length instanceof Number) {
+            fileInfo.putNumber("length", ((Number) length).longValue());
+        }
+        Object chunkSize = file.get("chunkSize");
+        if (chunkSize instanceof Number) {
+            fileInfo.putNumber("chunkSize", ((Number) chunkSize).intValue());
+        }
+        Object uploadDate = file.get("uploadDate");
+        if (uploadDate instanceof Date) {
+            fileInfo.putNumber("uploadDate", ((Date) uploadDate).getTime());
+        }
+
+        Object md5 = file.get("md5");
+        if (md5 instanceof String) {
+            fileInfo.putString("md5", (String) md5);
+        }
+
+        Object metadata = file.get("metadata");
+        if (metadata instanceof DBObject) {
+            fileInfo.putObject("metadata", new JsonObject(JSON.serialize(metadata)));
+        }
+
+        return fileInfo;
+    }
+
+    public void getChunk(Message<JsonObject> message, final JsonObject jsonObject) {
+
+        ObjectId id = getObjectId(message, jsonObject, "files_id");
+        if (id == null) {
+            return;
+        }
+
+        Integer n = getRequiredInt("n", message, jsonObject, 0);
+        if (n == null) {
             return;
         }
 
-        byte[] data = (byte[]) result.get("data");
+        String bucket = jsonObject.getString("bucket", GridFS.DEFAULT_BUCKET);
         boolean reply = jsonObject.getBoolean("reply", false);
+
+        if (reply && chunkPrefetcher != null && jsonObject.getBoolean("prefetch", true)) {
+            ChunkPrefetcher.Source source = createPrefetchSource(bucket, id, n);
+            ChunkPrefetcher.Stream stream = chunkPrefetcher.open(source);
+            if (stream != null) {
+                sendPrefetchedChunk(message, stream, n);
+                return;
+            }
+            source.close();
+        }
+
+        boolean cached = chunkCache != null && bucketConfig.getBoolean(bucket, "cache_chunks", true);
+        byte[] data = cached ? chunkCache.get(bucket, id, n) : null;
+
+        if (data == null) {
+            long version = cached ? chunkCache.getVersion(bucket, id) : 0;
+
+            DBCollection collection = db.getCollection(bucket + ".chunks");
+            DBObject dbObject = BasicDBObjectBuilder
+                    .start("files_id", id)
+                    .add("n", n)
+                    .get();
+
+            DBObject result = collection.findOne(dbObject);
+
+            if (result == null) {
+                message.reply(new byte[0]);
+                return;
+            }
+
+            data = getChunkData(bucket, result);
+            if (cached) {
+                chunkCache.put(bucket, id, n, data, version);
+            }
+        }
+
         Handler<Message<JsonObject>> replyHandler = null;
 
         if (reply) {
@@ -366,7 +2598,235 @@ public class GridFSModule extends Verticle implements Handler<Message<JsonObject
         }
 
         // TODO: Change to reply with a Buffer instead of a byte[]?
-        message.reply(data, replyHandler);
+        reply(message, data, replyHandler);
+
+    }
+
+    /**
+     * Replies with the next chunk of a prefetch stream, and chains a reply handler for the chunk after it
+     */
+    private <T> void sendPrefetchedChunk(Message<T> message, final ChunkPrefetcher.Stream stream, final int n) {
+
+        ChunkPrefetcher.Chunk chunk;
+        try {
+            chunk = stream.take();
+        } catch (Exception e) {
+            stream.close();
+            sendError(message, "Error getting chunk " + n + ": " + e.getMessage(), e);
+            return;
+        }
+
+        // Same as getChunk, an empty reply ends the chain at the first missing chunk
+        if (chunk == null || chunk.getN() != n) {
+            stream.close();
+            message.reply(new byte[0]);
+            return;
+        }
+
+        reply(message, chunk.getData(), new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                sendPrefetchedChunk(reply, stream, n + 1);
+            }
+        }, new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                stream.close();
+            }
+        });
+
+    }
+
+    /**
+     * Creates a prefetch source reading the chunks of a file from n onwards with one cursor
+     */
+    private ChunkPrefetcher.Source createPrefetchSource(final String bucket, ObjectId id, int n) {
+
+        indexManager.ensureChunksIndex(bucket);
+
+        DBObject query = BasicDBObjectBuilder
+                .start("files_id", id)
+                .push("n").add("$gte", n).pop()
+                .get();
+
+        final DBCursor cursor = db.getCollection(bucket + ".chunks")
+                .find(query)
+                .sort(new BasicDBObject("n", 1))
+                .hint(IndexManager.CHUNKS_INDEX);
+
+        return new ChunkPrefetcher.Source() {
+            @Override
+            public ChunkPrefetcher.Chunk next() {
+                if (!cursor.hasNext()) {
+                    return null;
+                }
+                DBObject chunk = cursor.next();
+                return new ChunkPrefetcher.Chunk(((Number) chunk.get("n")).intValue(), getChunkData(bucket, chunk));
+            }
+
+            @Override
+            public void close() {
+                cursor.close();
+            }
+        };
+
+    }
+
+    public void getChunks(Message<JsonObject> message, JsonObject jsonObject) {
+
+        ObjectId id = getObjectId(message, jsonObject, "files_id");
+        if (id == null) {
+            return;
+        }
+
+        Integer n = getRequiredInt("n", message, jsonObject, 0);
+        if (n == null) {
+            return;
+        }
+
+        Integer count = jsonObject.getInteger("count");
+        Long maxBytes = jsonObject.getLong("max_bytes");
+        if (count == null && maxBytes == null) {
+            sendError(message, "count or max_bytes must be specified");
+            return;
+        }
+        if (count != null && count < 1) {
+            sendError(message, "count must be greater than or equal to 1");
+            return;
+        }
+        if (maxBytes != null && maxBytes < 1) {
+            sendError(message, "max_bytes must be greater than or equal to 1");
+            return;
+        }
+
+        String bucket = jsonObject.getString("bucket", GridFS.DEFAULT_BUCKET);
+        indexManager.ensureChunksIndex(bucket);
+
+        BasicDBObjectBuilder range = BasicDBObjectBuilder.start("$gte", n);
+        if (count != null) {
+            range.add("$lt", n + count);
+        }
+        DBObject query = BasicDBObjectBuilder
+                .start("files_id", id)
+                .add("n", range.get())
+                .get();
+
+        DBCursor cursor = db.getCollection(bucket + ".chunks")
+                .find(query)
+                .sort(new BasicDBObject("n", 1))
+                .hint(IndexManager.CHUNKS_INDEX);
+        if (count != null) {
+            cursor.limit(count);
+        }
+
+        // Each chunk is framed as [int n][int length][data]
+        Buffer buffer = new Buffer();
+        long bytes = 0;
+
+        try {
+            while (cursor.hasNext()) {
+                DBObject chunk = cursor.next();
+                byte[] data = getChunkData(bucket, chunk);
+
+                // Always return at least one chunk, even if it is larger than max_bytes
+                bytes += data.length;
+                if (maxBytes != null && bytes > maxBytes && buffer.length() > 0) {
+                    break;
+                }
+
+                buffer.appendInt(((Number) chunk.get("n")).intValue());
+                buffer.appendInt(data.length);
+                buffer.appendBytes(data);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        message.reply(buffer);
+
+    }
+
+    public void getStats(Message<JsonObject> message) {
+
+        JsonObject stats = new JsonObject();
+        if (chunkCache != null) {
+            stats.putObject("chunkCache", chunkCache.getStats());
+        }
+        if (fileInfoCache != null) {
+            stats.putObject("fileCache", fileInfoCache.getStats());
+        }
+        if (fileNameCache != null) {
+            stats.putObject("fileNameCache", fileNameCache.getStats());
+        }
+        if (chunkPrefetcher != null) {
+            stats.putObject("prefetch", new JsonObject()
+                    .putNumber("streams", chunkPrefetcher.getStreamCount())
+                    .putNumber("bytes", chunkPrefetcher.getTotalBytes()));
+        }
+        if (orphanSweeper != null) {
+            stats.putObject("orphanSweeper", orphanSweeper.getStats());
+        }
+        if (admissionController != null) {
+            stats.putObject("admission", admissionController.getStats());
+        }
+        if (bulkheads != null) {
+            stats.putObject("bulkheads", bulkheads.getStats());
+        }
+        sendOK(message, stats);
+
+    }
+
+    public void getMissingChunks(Message<JsonObject> message, JsonObject jsonObject) {
+
+        ObjectId id = getObjectId(message, jsonObject, "files_id");
+        if (id == null) {
+            return;
+        }
+
+        Integer count = getRequiredInt("count", message, jsonObject, 0);
+        if (count == null) {
+            return;
+        }
+
+        String bucket = jsonObject.getString("bucket", GridFS.DEFAULT_BUCKET);
+        indexManager.ensureChunksIndex(bucket);
+
+        DBObject query = BasicDBObjectBuilder
+                .start("files_id", id)
+                .push("n").add("$lt", count).pop()
+                .get();
+
+        // Only fields from the {files_id, n} index are projected so the query is covered and chunk data is never read
+        DBObject fields = BasicDBObjectBuilder
+                .start("_id", 0)
+                .add("n", 1)
+                .get();
+
+        MissingChunks missing = new MissingChunks(count);
+
+        DBCursor cursor = db.getCollection(bucket + ".chunks")
+                .find(query, fields)
+                .sort(new BasicDBObject("n", 1))
+                .hint(IndexManager.CHUNKS_INDEX);
+        try {
+            while (cursor.hasNext()) {
+                Object n = cursor.next().get("n");
+                if (n instanceof Number) {
+                    missing.add(((Number) n).intValue());
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        missing.finish();
+
+        JsonObject reply = new JsonObject()
+                .putNumber("count", count)
+                .putNumber("missingCount", missing.getMissingCount())
+                .putArray("missing", missing.getRanges());
+
+        sendOK(message, reply);
 
     }
 
@@ -380,6 +2840,13 @@ public class GridFSModule extends Verticle implements Handler<Message<JsonObject
         message.reply(result);
     }
 
+    /**
+     * Replies that the request was rejected without being run, so the sender can back off or retry elsewhere
+     */
+    public <T> void sendBusy(Message<T> message) {
+        message.reply(new JsonObject().putString("status", "busy"));
+    }
+
     public <T> void sendOK(Message<T> message) {
         sendOK(message, new JsonObject());
     }
@@ -389,13 +2856,37 @@ public class GridFSModule extends Verticle implements Handler<Message<JsonObject
         message.reply(response);
     }
 
-    private String decode(byte[] bytes) {
-        try {
-            return new String(bytes, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            // Should never happen
-            throw new RuntimeException(e);
+    private JsonObject decodeJson(ByteBuf buffer, int index, int length) {
+        return new JsonObject(buffer.toString(index, length, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the files collection for a bucket.  Handles are cached so the read path does no per call set up.
+     *
+     * @param bucket the GridFS bucket
+     * @return the files collection
+     */
+    protected DBCollection getFilesCollection(String bucket) {
+        DBCollection collection = filesCollections.get(bucket);
+        if (collection == null) {
+            collection = db.getCollection(bucket + ".files");
+            filesCollections.put(bucket, collection);
+        }
+        return collection;
+    }
+
+    /**
+     * Returns the chunks collection for a bucket, set up to encode {@link ByteBuf} chunk data without copying
+     *
+     * @param bucket the GridFS bucket
+     * @return the chunks collection
+     */
+    protected DBCollection getChunksCollection(String bucket) {
+        DBCollection collection = db.getCollection(bucket + ".chunks");
+        if (collection.getDBEncoderFactory() != ChunkDBEncoder.FACTORY) {
+            collection.setDBEncoderFactory(ChunkDBEncoder.FACTORY);
         }
+        return collection;
     }
 
     private <T> ObjectId getObjectId(Message<T> message, JsonObject jsonObject, String fieldName) {
@@ -414,6 +2905,28 @@ public class GridFSModule extends Verticle implements Handler<Message<JsonObject
 
     }
 
+    /**
+     * Resolves the write concern for a request from the message "writeConcern" field, the bucket config and then the
+     * module config
+     *
+     * @return the upper case write concern name, or null if an error reply was sent
+     */
+    private <T> String getWriteConcern(Message<T> message, JsonObject jsonObject, String bucket) {
+
+        String name = jsonObject.getString("writeConcern");
+        if (name == null) {
+            name = bucketConfig.getString(bucket, "write_concern", DEFAULT_WRITE_CONCERN);
+        }
+
+        name = name.toUpperCase();
+        if (WriteConcern.valueOf(name) == null) {
+            sendError(message, "writeConcern " + name + " is not supported");
+            return null;
+        }
+        return name;
+
+    }
+
     private <T> String getRequiredString(String fieldName, Message<T> message, JsonObject jsonObject) {
         String value = jsonObject.getString(fieldName);
         if (value == null) {
@@ -422,6 +2935,19 @@ public class GridFSModule extends Verticle implements Handler<Message<JsonObject
         return value;
     }
 
+    private <T> Long getRequiredLong(String fieldName, Message<T> message, JsonObject jsonObject, long minValue) {
+        Long value = jsonObject.getLong(fieldName);
+        if (value == null) {
+            sendError(message, fieldName + " must be specified");
+            return null;
+        }
+        if (value < minValue) {
+            sendError(message, fieldName + " must be greater than or equal to " + minValue);
+            return null;
+        }
+        return value;
+    }
+
     private <T> Integer getRequiredInt(String fieldName, Message<T> message, JsonObject jsonObject, int minValue) {
         Integer value = jsonObject.getInteger(fieldName);
         if (value == null) {
@@ -0,0 +1,117 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.DB;
+import com.mongodb.DBObject;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ensures the standard GridFS indexes exist for a bucket exactly once per module instance
+ */
+public class IndexManager {
+
+    static final DBObject FILES_INDEX = BasicDBObjectBuilder.start()
+            .add("filename", 1)
+            .add("uploadDate", 1)
+            .get();
+
+    static final DBObject UPLOAD_DATE_INDEX = BasicDBObjectBuilder.start()
+            .add("uploadDate", 1)
+            .add("_id", 1)
+            .get();
+
+    static final DBObject CHUNKS_INDEX = BasicDBObjectBuilder.start()
+            .add("files_id", 1)
+            .add("n", 1)
+            .get();
+
+    private static final DBObject CHUNKS_INDEX_OPTIONS = BasicDBObjectBuilder.start()
+            .add("unique", 1)
+            .get();
+
+    private final DB db;
+    private final Set<String> filesIndexed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> chunksIndexed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> uploadDateIndexed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    public IndexManager(DB db) {
+        this.db = db;
+    }
+
+    /**
+     * Ensures both the files and chunks indexes for a bucket
+     *
+     * @param bucket the GridFS bucket
+     */
+    public void ensureIndexes(String bucket) {
+        ensureFilesIndex(bucket);
+        ensureChunksIndex(bucket);
+    }
+
+    /**
+     * Ensures the {filename, uploadDate} index on the bucket files collection
+     *
+     * @param bucket the GridFS bucket
+     */
+    public void ensureFilesIndex(String bucket) {
+        if (filesIndexed.contains(bucket)) {
+            return;
+        }
+        db.getCollection(bucket + ".files").ensureIndex(FILES_INDEX);
+        filesIndexed.add(bucket);
+    }
+
+    /**
+     * Ensures the {uploadDate, _id} index on the bucket files collection, used to list files by upload date.  It is
+     * not one of the standard GridFS indexes, so it is only created the first time a bucket is listed that way.
+     *
+     * @param bucket the GridFS bucket
+     */
+    public void ensureUploadDateIndex(String bucket) {
+        if (uploadDateIndexed.contains(bucket)) {
+            return;
+        }
+        db.getCollection(bucket + ".files").ensureIndex(UPLOAD_DATE_INDEX);
+        uploadDateIndexed.add(bucket);
+    }
+
+    /**
+     * Ensures the unique {files_id, n} index on the bucket chunks collection
+     *
+     * @param bucket the GridFS bucket
+     */
+    public void ensureChunksIndex(String bucket) {
+        if (chunksIndexed.contains(bucket)) {
+            return;
+        }
+        db.getCollection(bucket + ".chunks").ensureIndex(CHUNKS_INDEX, CHUNKS_INDEX_OPTIONS);
+        chunksIndexed.add(bucket);
+    }
+
+}
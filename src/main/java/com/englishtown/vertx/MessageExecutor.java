@@ -0,0 +1,167 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs message handlers on a dedicated, bounded thread pool instead of the Vert.x worker pool.  Messages beyond the
+ * queue limit are rejected rather than queued without bound.
+ * <p>
+ * The pool threads have no Vert.x context.  Handlers may reply to messages, but anything that needs a context, such as
+ * registering a reply handler or setting a timer, must be run on the module context with runOnContext.
+ */
+public class MessageExecutor {
+
+    private static final ThreadLocal<MessageExecutor> CURRENT = new ThreadLocal<>();
+
+    private final Logger logger;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param logger    the logger for exceptions thrown by handlers.  If null, exceptions are rethrown.
+     * @param name      the thread name prefix
+     * @param threads   the number of threads
+     * @param maxQueued the maximum number of messages waiting for a thread
+     */
+    public MessageExecutor(Logger logger, final String name, int threads, int maxQueued) {
+
+        this.logger = logger;
+
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        CURRENT.set(MessageExecutor.this);
+                        runnable.run();
+                    }
+                }, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(maxQueued), threadFactory);
+    }
+
+    /**
+     * @return the executor running the current thread, or null if it is not an executor thread
+     */
+    public static MessageExecutor current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Queues a message for a handler
+     *
+     * @return true if the message was queued, false if the queue is full or the executor was shut down
+     */
+    public <T> boolean execute(Message<T> message, Handler<Message<T>> handler) {
+        try {
+            executor.execute(new Task<>(message, handler));
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            return false;
+        }
+    }
+
+    public JsonObject getStats() {
+        return new JsonObject()
+                .putNumber("threads", executor.getPoolSize())
+                .putNumber("active", executor.getActiveCount())
+                .putNumber("queued", executor.getQueue().size())
+                .putNumber("completed", executor.getCompletedTaskCount())
+                .putNumber("rejected", rejected.get());
+    }
+
+    /**
+     * Stops accepting messages and waits for the running handlers to return.  Messages still queued are not handled
+     * but returned, so the caller can reply to them.
+     *
+     * @param timeout the time in milliseconds to wait for running handlers
+     * @return the queued messages
+     */
+    public List<Message<?>> shutdown(long timeout) {
+
+        executor.shutdown();
+        List<Runnable> queued = new ArrayList<>();
+        executor.getQueue().drainTo(queued);
+
+        List<Message<?>> messages = new ArrayList<>(queued.size());
+        for (Runnable runnable : queued) {
+            messages.add(((Task<?>) runnable).message);
+        }
+
+        try {
+            executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return messages;
+    }
+
+    private class Task<T> implements Runnable {
+
+        private final Message<T> message;
+        private final Handler<Message<T>> handler;
+
+        private Task(Message<T> message, Handler<Message<T>> handler) {
+            this.message = message;
+            this.handler = handler;
+        }
+
+        @Override
+        public void run() {
+            try {
+                handler.handle(message);
+            } catch (RuntimeException e) {
+                if (logger == null) {
+                    throw e;
+                }
+                logger.error("Unhandled exception in message handler", e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import org.vertx.java.core.json.JsonArray;
+
+/**
+ * Collects the ranges of chunk numbers missing from a file, given the chunk numbers present in ascending order
+ */
+public class MissingChunks {
+
+    private final int count;
+    private final JsonArray ranges = new JsonArray();
+    private int next;
+    private int missing;
+
+    /**
+     * @param count the expected number of chunks, numbered 0 to count - 1
+     */
+    public MissingChunks(int count) {
+        this.count = count;
+    }
+
+    /**
+     * Records a chunk number that is present.  Chunk numbers must be added in ascending order, numbers outside
+     * the expected range and duplicates are ignored.
+     *
+     * @param n the chunk number
+     */
+    public void add(int n) {
+        if (n < next || n >= count) {
+            return;
+        }
+        if (n > next) {
+            addRange(next, n - 1);
+        }
+        next = n + 1;
+    }
+
+    /**
+     * Completes the ranges after the last present chunk number has been added
+     *
+     * @return this
+     */
+    public MissingChunks finish() {
+        if (next < count) {
+            addRange(next, count - 1);
+            next = count;
+        }
+        return this;
+    }
+
+    /**
+     * @return an array of inclusive [first, last] chunk number ranges
+     */
+    public JsonArray getRanges() {
+        return ranges;
+    }
+
+    /**
+     * @return the total number of missing chunks
+     */
+    public int getMissingCount() {
+        return missing;
+    }
+
+    private void addRange(int first, int last) {
+        ranges.addArray(new JsonArray().addNumber(first).addNumber(last));
+        missing += last - first + 1;
+    }
+
+}
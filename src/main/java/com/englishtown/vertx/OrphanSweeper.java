@@ -0,0 +1,185 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import org.bson.types.ObjectId;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds and deletes orphaned chunks, whose files document no longer exists.  The distinct files_id values of each
+ * bucket chunks collection are walked in order a batch at a time and checked against the files collection.  Chunks
+ * are only deleted once the newest of them was written longer ago than a grace period, so chunks of uploads still in
+ * progress are kept.  The files_id is chosen by the client and may be arbitrarily old, so it says nothing about when
+ * the chunks were written.
+ * <p/>
+ * The sweep is driven by calling {@link #tick(long)} once a second.  Each tick deletes at most a fixed number of
+ * chunks and scans at most one batch of files_id values, so the sweep never competes with client traffic for more
+ * than a bounded amount of work.
+ */
+public class OrphanSweeper {
+
+    /**
+     * Database access for the sweep
+     */
+    public interface Store {
+        /**
+         * @return the next distinct chunk files_id values after the given id, in order
+         */
+        List<ObjectId> nextFileIds(String bucket, ObjectId after, int limit);
+
+        /**
+         * @return the ids with a files document
+         */
+        Set<ObjectId> existingFiles(String bucket, List<ObjectId> ids);
+
+        /**
+         * @return the time in milliseconds the newest chunk of a file was written, or {@link Long#MAX_VALUE} if it is
+         * not known
+         */
+        long lastChunkTime(String bucket, ObjectId filesId);
+
+        /**
+         * Deletes up to max chunks of a file
+         *
+         * @return the number of chunks deleted, 0 once none are left
+         */
+        int removeChunks(String bucket, ObjectId filesId, int max);
+    }
+
+    private static final ObjectId START = new ObjectId(new byte[12]);
+
+    private final Store store;
+    private final List<String> buckets;
+    private final int batchSize;
+    private final int maxChunksPerTick;
+    private final long gracePeriod;
+    private final long interval;
+
+    private final Deque<ObjectId> orphans = new ArrayDeque<>();
+    private volatile int bucketIndex;
+    private volatile ObjectId position = START;
+    private long nextPass;
+
+    private final AtomicLong passes = new AtomicLong();
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong orphansFound = new AtomicLong();
+    private final AtomicLong chunksRemoved = new AtomicLong();
+    private final AtomicLong throttledTicks = new AtomicLong();
+
+    /**
+     * @param store            the database access
+     * @param buckets          the buckets to sweep
+     * @param batchSize        the number of files_id values checked per tick
+     * @param maxChunksPerTick the maximum number of chunks deleted per tick
+     * @param gracePeriod      the minimum age in milliseconds of the newest chunk of a file before it is swept
+     * @param interval         the delay in milliseconds between the end of one pass and the start of the next
+     */
+    public OrphanSweeper(Store store, List<String> buckets, int batchSize, int maxChunksPerTick, long gracePeriod,
+                         long interval) {
+        this.store = store;
+        this.buckets = buckets;
+        this.batchSize = batchSize;
+        this.maxChunksPerTick = maxChunksPerTick;
+        this.gracePeriod = gracePeriod;
+        this.interval = interval;
+    }
+
+    /**
+     * Runs one step of the sweep
+     *
+     * @param now the current time in milliseconds
+     */
+    public synchronized void tick(long now) {
+
+        if (now < nextPass || buckets.isEmpty()) {
+            return;
+        }
+
+        String bucket = buckets.get(bucketIndex);
+        int budget = maxChunksPerTick;
+        boolean scannedBatch = false;
+
+        while (budget > 0) {
+
+            // Finish deleting the orphans already found before looking for more
+            if (!orphans.isEmpty()) {
+                int removed = store.removeChunks(bucket, orphans.peek(), budget);
+                if (removed == 0) {
+                    orphans.poll();
+                }
+                budget -= removed;
+                chunksRemoved.addAndGet(removed);
+                continue;
+            }
+
+            if (scannedBatch) {
+                return;
+            }
+            scannedBatch = true;
+
+            List<ObjectId> ids = store.nextFileIds(bucket, position, batchSize);
+            if (ids.isEmpty()) {
+                // End of this bucket, the pass ends after the last bucket
+                position = START;
+                bucketIndex = (bucketIndex + 1) % buckets.size();
+                if (bucketIndex == 0) {
+                    passes.incrementAndGet();
+                    nextPass = now + interval;
+                }
+                return;
+            }
+
+            scanned.addAndGet(ids.size());
+            position = ids.get(ids.size() - 1);
+
+            Set<ObjectId> existing = store.existingFiles(bucket, ids);
+            for (ObjectId id : ids) {
+                if (!existing.contains(id) && store.lastChunkTime(bucket, id) < now - gracePeriod) {
+                    orphans.add(id);
+                    orphansFound.incrementAndGet();
+                }
+            }
+        }
+
+        throttledTicks.incrementAndGet();
+    }
+
+    public JsonObject getStats() {
+        return new JsonObject()
+                .putString("bucket", buckets.isEmpty() ? null : buckets.get(bucketIndex))
+                .putString("position", position.toString())
+                .putNumber("passes", passes.get())
+                .putNumber("scanned", scanned.get())
+                .putNumber("orphans", orphansFound.get())
+                .putNumber("chunksRemoved", chunksRemoved.get())
+                .putNumber("throttledTicks", throttledTicks.get());
+    }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.DBObject;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.bson.types.ObjectId;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * State for a server side streaming upload.  Appended data of any size is cut into fixed size GridFS chunks, at most
+ * one partial chunk is held in memory between appends.
+ */
+public class UploadSession {
+
+    private final ObjectId id;
+    private final String bucket;
+    private final int chunkSize;
+    private final String filename;
+    private final String contentType;
+    private final JsonObject metadata;
+    private final String writeConcern;
+
+    private ByteBuf partial;
+    private long length;
+    private int n;
+    private long lastAccess;
+
+    public UploadSession(ObjectId id, String bucket, int chunkSize, String filename, String contentType,
+                         JsonObject metadata, String writeConcern) {
+        this.id = id;
+        this.bucket = bucket;
+        this.chunkSize = chunkSize;
+        this.filename = filename;
+        this.contentType = contentType;
+        this.metadata = metadata;
+        this.writeConcern = writeConcern;
+        this.lastAccess = System.currentTimeMillis();
+    }
+
+    /**
+     * Appends data to the upload
+     *
+     * @param data the bytes to append
+     * @return chunk documents for every chunk that was completed by this append
+     */
+    public List<DBObject> append(ByteBuf data) {
+
+        lastAccess = System.currentTimeMillis();
+        List<DBObject> chunks = new ArrayList<>();
+        length += data.readableBytes();
+
+        while (data.isReadable()) {
+            if (partial == null && data.readableBytes() >= chunkSize) {
+                // Whole chunks are sliced straight out of the appended data
+                chunks.add(createChunk(data.readSlice(chunkSize)));
+                continue;
+            }
+
+            if (partial == null) {
+                partial = Unpooled.buffer(chunkSize, chunkSize);
+            }
+            partial.writeBytes(data, Math.min(partial.writableBytes(), data.readableBytes()));
+
+            if (!partial.isWritable()) {
+                // The full buffer is handed over to the chunk and a new one allocated on the next append
+                chunks.add(createChunk(partial));
+                partial = null;
+            }
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Completes the upload
+     *
+     * @return a chunk document for the remaining partial chunk, or null if there is none
+     */
+    public DBObject finish() {
+        lastAccess = System.currentTimeMillis();
+        if (partial == null) {
+            return null;
+        }
+        DBObject chunk = createChunk(partial);
+        partial = null;
+        return chunk;
+    }
+
+    private DBObject createChunk(ByteBuf data) {
+        return BasicDBObjectBuilder.start()
+                .add("files_id", id)
+                .add("n", n++)
+                .add("data", data)
+                .get();
+    }
+
+    public ObjectId getId() {
+        return id;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public JsonObject getMetadata() {
+        return metadata;
+    }
+
+    public String getWriteConcern() {
+        return writeConcern;
+    }
+
+    /**
+     * @return the total number of bytes appended
+     */
+    public long getLength() {
+        return length;
+    }
+
+    public long getLastAccess() {
+        return lastAccess;
+    }
+
+}
@@ -0,0 +1,308 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded LRU cache shared by the file information, file name and chunk caches.  Entries are keyed by a group, the
+ * bucket and a file id or name, and a member within the group, and are invalidated a whole group at a time.  Entries
+ * expire after a time to live, and null results are cached with a separate, usually shorter, time to live.
+ * <p>
+ * A reader takes the group version before querying and passes it to {@link #put}, so a result read before an
+ * invalidation is never cached after it.  Versions are kept in a fixed number of stripes, so an unrelated
+ * invalidation can occasionally reject a put, but never the other way around.
+ *
+ * @param <V> the cached value type
+ */
+public class VersionedCache<V> {
+
+    private static final int VERSION_STRIPES = 1024;
+
+    private final long maxWeight;
+    private final long ttl;
+    private final long negativeTtl;
+    private final LinkedHashMap<Key, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Group, Set<Integer>> groups = new HashMap<>();
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+    private long weight;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @param maxWeight   the maximum total weight of the cached values
+     * @param ttl         the time in milliseconds a value is cached, Long.MAX_VALUE to never expire
+     * @param negativeTtl the time in milliseconds a null result is cached, 0 to not cache null results
+     */
+    public VersionedCache(long maxWeight, long ttl, long negativeTtl) {
+        this.maxWeight = maxWeight;
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+    }
+
+    /**
+     * @return the cached entry, or null if the member is not cached
+     */
+    public synchronized Entry<V> get(String bucket, Object id, int member) {
+
+        Key key = new Key(new Group(bucket, id), member);
+        Entry<V> entry = entries.get(key);
+        if (entry != null && entry.expires <= System.currentTimeMillis()) {
+            entries.remove(key);
+            remove(key, entry);
+            entry = null;
+        }
+
+        if (entry == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return entry;
+
+    }
+
+    /**
+     * @return the current version of a group, to be passed to {@link #put} after reading it
+     */
+    public long getVersion(String bucket, Object id) {
+        return versions.get(stripe(bucket, id));
+    }
+
+    /**
+     * Caches a value, evicting the least recently used entries to make room
+     *
+     * @param value   the value, or null to cache a missing result
+     * @param weight  the weight the value counts against the maximum weight
+     * @param version the group version taken before the value was read
+     * @return true if the value was cached, false if it is too heavy, null results are not cached or the group was
+     * invalidated since version
+     */
+    public synchronized boolean put(String bucket, Object id, int member, V value, long weight, long version) {
+
+        long entryTtl = value == null ? negativeTtl : ttl;
+        if (entryTtl <= 0 || weight > maxWeight || versions.get(stripe(bucket, id)) != version) {
+            return false;
+        }
+
+        long now = System.currentTimeMillis();
+        long expires = entryTtl > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + entryTtl;
+
+        Key key = new Key(new Group(bucket, id), member);
+        Entry<V> previous = entries.put(key, new Entry<>(value, weight, expires));
+        if (previous != null) {
+            this.weight -= previous.weight;
+            release(previous.value);
+        } else {
+            Set<Integer> members = groups.get(key.group);
+            if (members == null) {
+                members = new HashSet<>();
+                groups.put(key.group, members);
+            }
+            members.add(member);
+        }
+        this.weight += weight;
+
+        Iterator<Map.Entry<Key, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (this.weight > maxWeight && iterator.hasNext()) {
+            Map.Entry<Key, Entry<V>> eldest = iterator.next();
+            iterator.remove();
+            remove(eldest.getKey(), eldest.getValue());
+            evictions.incrementAndGet();
+        }
+        return true;
+
+    }
+
+    /**
+     * Drops every cached member of a group
+     */
+    public synchronized void invalidate(String bucket, Object id) {
+
+        versions.incrementAndGet(stripe(bucket, id));
+
+        Group group = new Group(bucket, id);
+        Set<Integer> members = groups.remove(group);
+        if (members == null) {
+            return;
+        }
+        for (Integer member : members) {
+            Entry<V> entry = entries.remove(new Key(group, member));
+            if (entry != null) {
+                weight -= entry.weight;
+                release(entry.value);
+                invalidations.incrementAndGet();
+            }
+        }
+
+    }
+
+    /**
+     * Drops every cached entry
+     */
+    public synchronized void clear() {
+        for (Entry<V> entry : entries.values()) {
+            release(entry.value);
+        }
+        entries.clear();
+        groups.clear();
+        weight = 0;
+    }
+
+    /**
+     * @return the total weight of the cached values
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return the cache counters and current number of entries
+     */
+    public synchronized JsonObject getStats() {
+        return new JsonObject()
+                .putNumber("hits", hits.get())
+                .putNumber("misses", misses.get())
+                .putNumber("evictions", evictions.get())
+                .putNumber("invalidations", invalidations.get())
+                .putNumber("entries", entries.size());
+    }
+
+    /**
+     * Called when a value leaves the cache, for values holding resources that must be freed
+     *
+     * @param value the value, or null for a cached null result
+     */
+    protected void release(V value) {
+    }
+
+    private void remove(Key key, Entry<V> entry) {
+        weight -= entry.weight;
+        release(entry.value);
+        Set<Integer> members = groups.get(key.group);
+        if (members != null) {
+            members.remove(key.member);
+            if (members.isEmpty()) {
+                groups.remove(key.group);
+            }
+        }
+    }
+
+    private int stripe(String bucket, Object id) {
+        int hash = 31 * bucket.hashCode() + id.hashCode();
+        return (hash ^ (hash >>> 16)) & (VERSION_STRIPES - 1);
+    }
+
+    /**
+     * A cached value
+     */
+    public static class Entry<V> {
+
+        private final V value;
+        private final long weight;
+        private final long expires;
+
+        private Entry(V value, long weight, long expires) {
+            this.value = value;
+            this.weight = weight;
+            this.expires = expires;
+        }
+
+        /**
+         * @return the cached value, or null for a cached null result
+         */
+        public V getValue() {
+            return value;
+        }
+    }
+
+    private static class Group {
+
+        private final String bucket;
+        private final Object id;
+
+        private Group(String bucket, Object id) {
+            this.bucket = bucket;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Group)) {
+                return false;
+            }
+            Group group = (Group) o;
+            return id.equals(group.id) && bucket.equals(group.bucket);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * bucket.hashCode() + id.hashCode();
+        }
+    }
+
+    private static class Key {
+
+        private final Group group;
+        private final int member;
+
+        private Key(Group group, int member) {
+            this.group = group;
+            this.member = member;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return member == key.member && group.equals(key.group);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * group.hashCode() + member;
+        }
+    }
+
+}
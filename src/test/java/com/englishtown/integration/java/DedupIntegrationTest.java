@@ -0,0 +1,119 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.integration.java;
+
+import com.englishtown.vertx.GridFSModule;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.vertx.java.core.Future;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.testtools.TestVerticle;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+import static org.vertx.testtools.VertxAssert.assertEquals;
+import static org.vertx.testtools.VertxAssert.assertTrue;
+import static org.vertx.testtools.VertxAssert.testComplete;
+
+/**
+ * Integration tests for saving and reading chunks in a bucket in dedup mode
+ */
+public class DedupIntegrationTest extends TestVerticle {
+
+    private EventBus eventBus;
+    private final String address = GridFSModule.DEFAULT_ADDRESS;
+    private final String bucket = "dedup";
+
+    @Test
+    public void testSaveChunk_Same_Data_Twice() throws Exception {
+
+        final byte[] data = new byte[100];
+        Arrays.fill(data, (byte) 7);
+
+        final String first = new ObjectId().toString();
+        final String second = new ObjectId().toString();
+
+        eventBus.send(address + "/saveChunk", getMessage(first, data), new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                assertEquals("ok", reply.body().getString("status"));
+
+                eventBus.send(address + "/saveChunk", getMessage(second, data), new Handler<Message<JsonObject>>() {
+                    @Override
+                    public void handle(Message<JsonObject> reply) {
+                        assertEquals("ok", reply.body().getString("status"));
+
+                        JsonObject getChunk = new JsonObject()
+                                .putString("action", "getChunk")
+                                .putString("files_id", second)
+                                .putNumber("n", 0)
+                                .putString("bucket", bucket);
+
+                        eventBus.send(address, getChunk, new Handler<Message<byte[]>>() {
+                            @Override
+                            public void handle(Message<byte[]> reply) {
+                                assertTrue(Arrays.equals(data, reply.body()));
+                                testComplete();
+                            }
+                        });
+                    }
+                });
+            }
+        });
+
+    }
+
+    private Buffer getMessage(String files_id, byte[] data) {
+
+        JsonObject jsonObject = new JsonObject()
+                .putString("files_id", files_id)
+                .putNumber("n", 0)
+                .putString("bucket", bucket);
+
+        byte[] jsonBytes;
+        try {
+            jsonBytes = jsonObject.encode().getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+
+        Buffer buffer = new Buffer();
+        buffer.appendInt(jsonBytes.length);
+        buffer.appendBytes(jsonBytes);
+        buffer.appendBytes(data);
+        return buffer;
+    }
+
+    @Override
+    public void start(Future<Void> startedResult) {
+        eventBus = vertx.eventBus();
+        IntegrationTestHelper.onVerticleStart(this, startedResult, "/dedup_config.json");
+    }
+
+}
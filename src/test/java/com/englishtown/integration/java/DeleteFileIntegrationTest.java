@@ -0,0 +1,288 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.integration.java;
+
+import com.englishtown.vertx.GridFSModule;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.vertx.java.core.Future;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.testtools.TestVerticle;
+
+import java.io.UnsupportedEncodingException;
+
+import static org.vertx.testtools.VertxAssert.assertEquals;
+import static org.vertx.testtools.VertxAssert.testComplete;
+
+/**
+ * Integration tests for the deleteFile operation
+ */
+public class DeleteFileIntegrationTest extends TestVerticle {
+
+    private EventBus eventBus;
+    private final String address = GridFSModule.DEFAULT_ADDRESS;
+
+    @Test
+    public void testDeleteFile_Missing_Id() {
+
+        JsonObject message = new JsonObject()
+                .putString("action", "deleteFile");
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> message) {
+                IntegrationTestHelper.verifyErrorReply(message, "id must be specified");
+            }
+        });
+
+    }
+
+    @Test
+    public void testDeleteFile_Not_Found() {
+
+        final String id = new ObjectId().toString();
+        JsonObject message = new JsonObject()
+                .putString("action", "deleteFile")
+                .putString("id", id)
+                .putString("bucket", "it");
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> message) {
+                IntegrationTestHelper.verifyErrorReply(message, "File does not exist: " + id);
+            }
+        });
+
+    }
+
+    @Test
+    public void testDeleteFile_Orphaned_Requires_Claim() {
+
+        final String id = new ObjectId().toString();
+        JsonObject message = new JsonObject()
+                .putString("action", "deleteFile")
+                .putString("id", id)
+                .putString("bucket", "it")
+                .putBoolean("orphaned", true)
+                .putString("claim", new ObjectId().toString());
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> message) {
+                IntegrationTestHelper.verifyErrorReply(message, "Claim not held: " + id);
+            }
+        });
+
+    }
+
+    @Test
+    public void testClaimFile_Second_Claim_Rejected() {
+
+        final String id = new ObjectId().toString();
+        final JsonObject message = new JsonObject()
+                .putString("action", "claimFile")
+                .putString("id", id)
+                .putString("bucket", "it");
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                assertEquals("ok", reply.body().getString("status"));
+
+                eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+                    @Override
+                    public void handle(Message<JsonObject> message) {
+                        IntegrationTestHelper.verifyErrorReply(message, "File is being uploaded: " + id);
+                    }
+                });
+            }
+        });
+
+    }
+
+    @Test
+    public void testClaimFile_Existing_File() {
+
+        final String id = new ObjectId().toString();
+        JsonObject message = new JsonObject()
+                .putString("action", "saveFile")
+                .putString("id", id)
+                .putNumber("length", 0)
+                .putNumber("chunkSize", 10)
+                .putString("bucket", "it");
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                assertEquals("ok", reply.body().getString("status"));
+
+                JsonObject message = new JsonObject()
+                        .putString("action", "claimFile")
+                        .putString("id", id)
+                        .putString("bucket", "it");
+
+                eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+                    @Override
+                    public void handle(Message<JsonObject> message) {
+                        IntegrationTestHelper.verifyErrorReply(message, "File exists: " + id);
+                    }
+                });
+            }
+        });
+
+    }
+
+    @Test
+    public void testDeleteFile() {
+        saveChunks(new ObjectId().toString(), 0, 3);
+    }
+
+    private void saveChunks(final String id, final int n, final int count) {
+
+        if (n == count) {
+            saveFile(id, count);
+            return;
+        }
+
+        JsonObject jsonObject = new JsonObject()
+                .putString("files_id", id)
+                .putNumber("n", n)
+                .putString("bucket", "it");
+
+        Buffer buffer;
+        try {
+            buffer = getMessage(jsonObject, new byte[10]);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+
+        eventBus.send(address + "/saveChunk", buffer, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                assertEquals("ok", reply.body().getString("status"));
+                saveChunks(id, n + 1, count);
+            }
+        });
+
+    }
+
+    private void saveFile(final String id, final int count) {
+
+        JsonObject message = new JsonObject()
+                .putString("action", "saveFile")
+                .putString("id", id)
+                .putNumber("length", count * 10)
+                .putNumber("chunkSize", 10)
+                .putString("filename", "delete.bin")
+                .putString("bucket", "it");
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                assertEquals("ok", reply.body().getString("status"));
+                deleteFile(id, count);
+            }
+        });
+
+    }
+
+    private void deleteFile(final String id, final int count) {
+
+        // A batch size smaller than the chunk count exercises more than one batch
+        JsonObject message = new JsonObject()
+                .putString("action", "deleteFile")
+                .putString("id", id)
+                .putNumber("batch_size", 2)
+                .putString("bucket", "it");
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                assertEquals("ok", reply.body().getString("status"));
+                assertEquals(count, reply.body().getInteger("chunks").intValue());
+                getFile(id, count);
+            }
+        });
+
+    }
+
+    private void getFile(final String id, final int count) {
+
+        JsonObject message = new JsonObject()
+                .putString("action", "getFile")
+                .putString("id", id)
+                .putString("bucket", "it");
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                assertEquals("error", reply.body().getString("status"));
+                getMissingChunks(id, count);
+            }
+        });
+
+    }
+
+    private void getMissingChunks(String id, final int count) {
+
+        JsonObject message = new JsonObject()
+                .putString("action", "getMissingChunks")
+                .putString("files_id", id)
+                .putNumber("count", count)
+                .putString("bucket", "it");
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                assertEquals("ok", reply.body().getString("status"));
+                assertEquals(count, reply.body().getInteger("missingCount").intValue());
+                testComplete();
+            }
+        });
+
+    }
+
+    private Buffer getMessage(JsonObject jsonObject, byte[] data) throws UnsupportedEncodingException {
+
+        Buffer buffer = new Buffer();
+        byte[] jsonBytes = jsonObject.encode().getBytes("UTF-8");
+
+        buffer.appendInt(jsonBytes.length);
+        buffer.appendBytes(jsonBytes);
+        buffer.appendBytes(data);
+
+        return buffer;
+    }
+
+    @Override
+    public void start(Future<Void> startedResult) {
+        eventBus = vertx.eventBus();
+        IntegrationTestHelper.onVerticleStart(this, startedResult, "/config.json");
+    }
+
+}
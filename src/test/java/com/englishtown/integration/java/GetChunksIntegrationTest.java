@@ -0,0 +1,163 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.integration.java;
+
+import com.englishtown.vertx.GridFSModule;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.vertx.java.core.Future;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.testtools.TestVerticle;
+
+import java.io.UnsupportedEncodingException;
+
+import static org.vertx.testtools.VertxAssert.assertEquals;
+import static org.vertx.testtools.VertxAssert.testComplete;
+
+/**
+ * Integration tests for the getChunks operation
+ */
+public class GetChunksIntegrationTest extends TestVerticle {
+
+    private EventBus eventBus;
+    private final String address = GridFSModule.DEFAULT_ADDRESS;
+
+    @Test
+    public void testGetChunks_Missing_Count() {
+
+        JsonObject message = new JsonObject()
+                .putString("action", "getChunks")
+                .putString("files_id", new ObjectId().toString())
+                .putNumber("n", 0);
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> message) {
+                IntegrationTestHelper.verifyErrorReply(message, "count or max_bytes must be specified");
+            }
+        });
+
+    }
+
+    @Test
+    public void testGetChunks_Count() {
+
+        final JsonObject message = new JsonObject()
+                .putString("action", "getChunks")
+                .putNumber("n", 1)
+                .putNumber("count", 2)
+                .putString("bucket", "it");
+
+        saveChunks(new ObjectId().toString(), 0, message, new int[]{1, 2});
+
+    }
+
+    @Test
+    public void testGetChunks_Max_Bytes() {
+
+        final JsonObject message = new JsonObject()
+                .putString("action", "getChunks")
+                .putNumber("n", 0)
+                .putNumber("max_bytes", 25)
+                .putString("bucket", "it");
+
+        saveChunks(new ObjectId().toString(), 0, message, new int[]{0, 1});
+
+    }
+
+    private void saveChunks(final String files_id, final int n, final JsonObject getChunks, final int[] expected) {
+
+        if (n == 4) {
+            getChunks(getChunks.putString("files_id", files_id), expected);
+            return;
+        }
+
+        JsonObject jsonObject = new JsonObject()
+                .putString("files_id", files_id)
+                .putNumber("n", n)
+                .putString("bucket", "it");
+
+        byte[] data = new byte[10];
+        data[0] = (byte) n;
+
+        Buffer buffer;
+        try {
+            buffer = getMessage(jsonObject, data);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+
+        eventBus.send(address + "/saveChunk", buffer, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                assertEquals("ok", reply.body().getString("status"));
+                saveChunks(files_id, n + 1, getChunks, expected);
+            }
+        });
+
+    }
+
+    private void getChunks(JsonObject message, final int[] expected) {
+
+        eventBus.send(address, message, new Handler<Message<Buffer>>() {
+            @Override
+            public void handle(Message<Buffer> reply) {
+                Buffer body = reply.body();
+                int pos = 0;
+                for (int n : expected) {
+                    assertEquals(n, body.getInt(pos));
+                    assertEquals(10, body.getInt(pos + 4));
+                    assertEquals(n, (int) body.getByte(pos + 8));
+                    pos += 18;
+                }
+                assertEquals(pos, body.length());
+                testComplete();
+            }
+        });
+
+    }
+
+    private Buffer getMessage(JsonObject jsonObject, byte[] data) throws UnsupportedEncodingException {
+
+        Buffer buffer = new Buffer();
+        byte[] jsonBytes = jsonObject.encode().getBytes("UTF-8");
+
+        buffer.appendInt(jsonBytes.length);
+        buffer.appendBytes(jsonBytes);
+        buffer.appendBytes(data);
+
+        return buffer;
+    }
+
+    @Override
+    public void start(Future<Void> startedResult) {
+        eventBus = vertx.eventBus();
+        IntegrationTestHelper.onVerticleStart(this, startedResult, "/config.json");
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.integration.java;
+
+import com.englishtown.vertx.GridFSModule;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.vertx.java.core.Future;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.testtools.TestVerticle;
+
+import static org.vertx.testtools.VertxAssert.assertEquals;
+import static org.vertx.testtools.VertxAssert.testComplete;
+
+/**
+ * Integration tests for the getFileByName operation
+ */
+public class GetFileByNameIntegrationTest extends TestVerticle {
+
+    private EventBus eventBus;
+    private final String address = GridFSModule.DEFAULT_ADDRESS;
+
+    @Test
+    public void testGetFileByName_Missing_Filename() {
+
+        JsonObject message = new JsonObject()
+                .putString("action", "getFileByName");
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> message) {
+                IntegrationTestHelper.verifyErrorReply(message, "filename must be specified");
+            }
+        });
+
+    }
+
+    @Test
+    public void testGetFileByName_Revisions() {
+
+        final String filename = "revisions_" + new ObjectId().toString() + ".txt";
+        final String first = new ObjectId().toString();
+        final String second = new ObjectId().toString();
+        final long now = System.currentTimeMillis();
+
+        saveFile(first, filename, now - 1000, new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                saveFile(second, filename, now, new Handler<Void>() {
+                    @Override
+                    public void handle(Void event) {
+                        getFileByName(filename, -1, second, new Handler<Void>() {
+                            @Override
+                            public void handle(Void event) {
+                                getFileByName(filename, 0, first, new Handler<Void>() {
+                                    @Override
+                                    public void handle(Void event) {
+                                        getFileByName(filename, -2, first, new Handler<Void>() {
+                                            @Override
+                                            public void handle(Void event) {
+                                                testComplete();
+                                            }
+                                        });
+                                    }
+                                });
+                            }
+                        });
+                    }
+                });
+            }
+        });
+
+    }
+
+    private void saveFile(String id, String filename, long uploadDate, final Handler<Void> next) {
+
+        JsonObject message = new JsonObject()
+                .putString("action", "saveFile")
+                .putString("id", id)
+                .putNumber("length", 1)
+                .putNumber("chunkSize", 1024)
+                .putNumber("uploadDate", uploadDate)
+                .putString("filename", filename)
+                .putString("bucket", "it");
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                assertEquals("ok", reply.body().getString("status"));
+                next.handle(null);
+            }
+        });
+
+    }
+
+    private void getFileByName(String filename, int revision, final String expectedId, final Handler<Void> next) {
+
+        JsonObject message = new JsonObject()
+                .putString("action", "getFileByName")
+                .putString("filename", filename)
+                .putNumber("revision", revision)
+                .putString("bucket", "it");
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                assertEquals("ok", reply.body().getString("status"));
+                assertEquals(expectedId, reply.body().getString("id"));
+                next.handle(null);
+            }
+        });
+
+    }
+
+    @Override
+    public void start(Future<Void> startedResult) {
+        eventBus = vertx.eventBus();
+        IntegrationTestHelper.onVerticleStart(this, startedResult, "/config.json");
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.integration.java;
+
+import com.englishtown.vertx.GridFSModule;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.vertx.java.core.Future;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.testtools.TestVerticle;
+
+import static org.vertx.testtools.VertxAssert.assertEquals;
+import static org.vertx.testtools.VertxAssert.assertNull;
+import static org.vertx.testtools.VertxAssert.assertTrue;
+import static org.vertx.testtools.VertxAssert.testComplete;
+
+/**
+ * Integration tests for the getFiles operation
+ */
+public class GetFilesIntegrationTest extends TestVerticle {
+
+    private EventBus eventBus;
+    private final String address = GridFSModule.DEFAULT_ADDRESS;
+
+    @Test
+    public void testGetFiles_Missing_Ids() {
+
+        JsonObject message = new JsonObject()
+                .putString("action", "getFiles");
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> message) {
+                IntegrationTestHelper.verifyErrorReply(message, "ids must be specified");
+            }
+        });
+
+    }
+
+    @Test
+    public void testGetFiles_Invalid_Id() {
+
+        JsonObject message = new JsonObject()
+                .putString("action", "getFiles")
+                .putArray("ids", new JsonArray().addString("not-an-id"));
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> message) {
+                IntegrationTestHelper.verifyErrorReply(message, "id not-an-id is not a valid ObjectId");
+            }
+        });
+
+    }
+
+    @Test
+    public void testGetFiles() {
+
+        final String first = new ObjectId().toString();
+        final String second = new ObjectId().toString();
+        final String missing = new ObjectId().toString();
+
+        saveFile(first, 10, new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                saveFile(second, 20, new Handler<Void>() {
+                    @Override
+                    public void handle(Void event) {
+                        getFiles(first, second, missing);
+                    }
+                });
+            }
+        });
+
+    }
+
+    private void getFiles(final String first, final String second, final String missing) {
+
+        // A batch size of 2 splits the 3 ids over two queries
+        JsonObject message = new JsonObject()
+                .putString("action", "getFiles")
+                .putArray("ids", new JsonArray().addString(first).addString(second).addString(missing))
+                .putArray("fields", new JsonArray().addString("length").addString("contentType"))
+                .putNumber("batch_size", 2)
+                .putString("bucket", "it");
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                assertEquals("ok", reply.body().getString("status"));
+
+                JsonObject files = reply.body().getObject("files");
+                assertEquals(3, files.size());
+                assertEquals(10, files.getObject(first).getInteger("length").intValue());
+                assertEquals("text/plain", files.getObject(first).getString("contentType"));
+                assertNull(files.getObject(first).getField("filename"));
+                assertEquals(20, files.getObject(second).getInteger("length").intValue());
+                assertTrue(files.containsField(missing));
+                assertNull(files.getObject(missing));
+                testComplete();
+            }
+        });
+
+    }
+
+    private void saveFile(String id, int length, final Handler<Void> next) {
+
+        JsonObject message = new JsonObject()
+                .putString("action", "saveFile")
+                .putString("id", id)
+                .putNumber("length", length)
+                .putNumber("chunkSize", 1024)
+                .putString("filename", "files.txt")
+                .putString("contentType", "text/plain")
+                .putString("bucket", "it");
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                assertEquals("ok", reply.body().getString("status"));
+                next.handle(null);
+            }
+        });
+
+    }
+
+    @Override
+    public void start(Future<Void> startedResult) {
+        eventBus = vertx.eventBus();
+        IntegrationTestHelper.onVerticleStart(this, startedResult, "/config.json");
+    }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.integration.java;
+
+import com.englishtown.vertx.GridFSModule;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.vertx.java.core.Future;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.testtools.TestVerticle;
+
+import java.io.UnsupportedEncodingException;
+
+import static org.vertx.testtools.VertxAssert.assertEquals;
+import static org.vertx.testtools.VertxAssert.testComplete;
+
+/**
+ * Integration tests for the getRange operation
+ */
+public class GetRangeIntegrationTest extends TestVerticle {
+
+    private EventBus eventBus;
+    private final String address = GridFSModule.DEFAULT_ADDRESS;
+
+    @Test
+    public void testGetRange_Missing_Offset() {
+
+        JsonObject message = new JsonObject()
+                .putString("action", "getRange")
+                .putString("id", new ObjectId().toString());
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> message) {
+                IntegrationTestHelper.verifyErrorReply(message, "offset must be specified");
+            }
+        });
+
+    }
+
+    @Test
+    public void testGetRange_File_Not_Found() {
+
+        final String id = new ObjectId().toString();
+        JsonObject message = new JsonObject()
+                .putString("action", "getRange")
+                .putString("id", id)
+                .putNumber("offset", 0);
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> message) {
+                IntegrationTestHelper.verifyErrorReply(message, "File does not exist: " + id);
+            }
+        });
+
+    }
+
+    @Test
+    public void testGetRange() {
+        saveChunks(new ObjectId().toString(), 0);
+    }
+
+    private void saveChunks(final String id, final int n) {
+
+        if (n == 4) {
+            saveFile(id);
+            return;
+        }
+
+        JsonObject jsonObject = new JsonObject()
+                .putString("files_id", id)
+                .putNumber("n", n)
+                .putString("bucket", "it");
+
+        // Every byte holds its position in the file
+        byte[] data = new byte[10];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (n * 10 + i);
+        }
+
+        Buffer buffer;
+        try {
+            buffer = getMessage(jsonObject, data);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+
+        eventBus.send(address + "/saveChunk", buffer, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                assertEquals("ok", reply.body().getString("status"));
+                saveChunks(id, n + 1);
+            }
+        });
+
+    }
+
+    private void saveFile(final String id) {
+
+        JsonObject message = new JsonObject()
+                .putString("action", "saveFile")
+                .putString("id", id)
+                .putNumber("length", 40)
+                .putNumber("chunkSize", 10)
+                .putString("bucket", "it");
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                assertEquals("ok", reply.body().getString("status"));
+
+                JsonObject message = new JsonObject()
+                        .putString("action", "getRange")
+                        .putString("id", id)
+                        .putNumber("offset", 15)
+                        .putNumber("length", 12)
+                        .putNumber("segment_size", 10)
+                        .putString("bucket", "it");
+
+                eventBus.send(address, message, new Handler<Message<Buffer>>() {
+                    @Override
+                    public void handle(Message<Buffer> reply) {
+                        verifySegment(reply.body(), 15, 20);
+                        reply.reply(new JsonObject(), new Handler<Message<Buffer>>() {
+                            @Override
+                            public void handle(Message<Buffer> reply) {
+                                verifySegment(reply.body(), 20, 27);
+                                reply.reply(new JsonObject(), new Handler<Message<Buffer>>() {
+                                    @Override
+                                    public void handle(Message<Buffer> reply) {
+                                        assertEquals(0, reply.body().length());
+                                        testComplete();
+                                    }
+                                });
+                            }
+                        });
+                    }
+                });
+            }
+        });
+
+    }
+
+    private void verifySegment(Buffer segment, int start, int end) {
+        assertEquals(end - start, segment.length());
+        for (int i = 0; i < segment.length(); i++) {
+            assertEquals(start + i, (int) segment.getByte(i));
+        }
+    }
+
+    private Buffer getMessage(JsonObject jsonObject, byte[] data) throws UnsupportedEncodingException {
+
+        Buffer buffer = new Buffer();
+        byte[] jsonBytes = jsonObject.encode().getBytes("UTF-8");
+
+        buffer.appendInt(jsonBytes.length);
+        buffer.appendBytes(jsonBytes);
+        buffer.appendBytes(data);
+
+        return buffer;
+    }
+
+    @Override
+    public void start(Future<Void> startedResult) {
+        eventBus = vertx.eventBus();
+        IntegrationTestHelper.onVerticleStart(this, startedResult, "/config.json");
+    }
+
+}
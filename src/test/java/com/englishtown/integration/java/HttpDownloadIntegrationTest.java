@@ -0,0 +1,139 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.integration.java;
+
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.vertx.java.core.Future;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.http.HttpClient;
+import org.vertx.java.core.http.HttpClientRequest;
+import org.vertx.java.core.http.HttpClientResponse;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.testtools.TestVerticle;
+
+import static org.vertx.testtools.VertxAssert.assertEquals;
+import static org.vertx.testtools.VertxAssert.assertNotNull;
+import static org.vertx.testtools.VertxAssert.testComplete;
+
+/**
+ * Integration tests for the HTTP download server
+ */
+public class HttpDownloadIntegrationTest extends TestVerticle {
+
+    private JsonObject config;
+    private HttpClient client;
+
+    @Test
+    public void testGet_Not_Found() {
+
+        client.getNow("/it/" + new ObjectId().toString(), new Handler<HttpClientResponse>() {
+            @Override
+            public void handle(HttpClientResponse response) {
+                assertEquals(404, response.statusCode());
+                testComplete();
+            }
+        });
+
+    }
+
+    @Test
+    public void testGet() {
+
+        String id = IntegrationTestHelper.createFile(config, "it");
+
+        client.getNow("/it/" + id, new Handler<HttpClientResponse>() {
+            @Override
+            public void handle(final HttpClientResponse response) {
+                assertEquals(200, response.statusCode());
+                assertEquals(IntegrationTestHelper.DEFAULT_CONTENT_TYPE, response.headers().get("Content-Type"));
+                assertEquals(String.valueOf(IntegrationTestHelper.DEFAULT_LENGTH), response.headers().get("Content-Length"));
+                assertNotNull(response.headers().get("ETag"));
+                response.bodyHandler(new Handler<Buffer>() {
+                    @Override
+                    public void handle(Buffer body) {
+                        assertEquals(IntegrationTestHelper.DEFAULT_LENGTH.intValue(), body.length());
+                        testComplete();
+                    }
+                });
+            }
+        });
+
+    }
+
+    @Test
+    public void testGet_Range() {
+
+        String id = IntegrationTestHelper.createFile(config, "it");
+
+        HttpClientRequest request = client.get("/it/" + id, new Handler<HttpClientResponse>() {
+            @Override
+            public void handle(final HttpClientResponse response) {
+                assertEquals(206, response.statusCode());
+                assertEquals("bytes 102390-102409/" + IntegrationTestHelper.DEFAULT_LENGTH,
+                        response.headers().get("Content-Range"));
+                response.bodyHandler(new Handler<Buffer>() {
+                    @Override
+                    public void handle(Buffer body) {
+                        assertEquals(20, body.length());
+                        testComplete();
+                    }
+                });
+            }
+        });
+        request.headers().set("Range", "bytes=102390-102409");
+        request.end();
+
+    }
+
+    @Test
+    public void testGet_Not_Modified() {
+
+        final String id = IntegrationTestHelper.createFile(config, "it");
+
+        client.getNow("/it/" + id, new Handler<HttpClientResponse>() {
+            @Override
+            public void handle(HttpClientResponse response) {
+                HttpClientRequest request = client.get("/it/" + id, new Handler<HttpClientResponse>() {
+                    @Override
+                    public void handle(HttpClientResponse response) {
+                        assertEquals(304, response.statusCode());
+                        testComplete();
+                    }
+                });
+                request.headers().set("If-None-Match", response.headers().get("ETag"));
+                request.end();
+            }
+        });
+
+    }
+
+    @Override
+    public void start(Future<Void> startedResult) {
+        client = vertx.createHttpClient().setHost("localhost").setPort(8181);
+        config = IntegrationTestHelper.onVerticleStart(this, startedResult, "/http_config.json");
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.integration.java;
+
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.vertx.java.core.Future;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.http.HttpClient;
+import org.vertx.java.core.http.HttpClientRequest;
+import org.vertx.java.core.http.HttpClientResponse;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.testtools.TestVerticle;
+
+import static org.vertx.testtools.VertxAssert.assertEquals;
+import static org.vertx.testtools.VertxAssert.testComplete;
+
+/**
+ * Integration tests for the HTTP upload endpoint
+ */
+public class HttpUploadIntegrationTest extends TestVerticle {
+
+    private HttpClient client;
+
+    @Test
+    public void testPut() {
+
+        final String id = new ObjectId().toString();
+        final int length = 300000;
+
+        HttpClientRequest request = client.put("/it/" + id + "?filename=upload.bin", new Handler<HttpClientResponse>() {
+            @Override
+            public void handle(HttpClientResponse response) {
+                assertEquals(201, response.statusCode());
+                response.bodyHandler(new Handler<Buffer>() {
+                    @Override
+                    public void handle(Buffer body) {
+                        JsonObject reply = new JsonObject(body.toString());
+                        assertEquals(id, reply.getString("id"));
+                        verifyDownload(id, length);
+                    }
+                });
+            }
+        });
+
+        // Send the body in pieces that do not line up with the chunk size
+        request.setChunked(true);
+        request.headers().set("Content-Type", "application/octet-stream");
+        int written = 0;
+        while (written < length) {
+            int size = Math.min(7000, length - written);
+            byte[] data = new byte[size];
+            for (int i = 0; i < size; i++) {
+                data[i] = (byte) (written + i);
+            }
+            request.write(new Buffer(data));
+            written += size;
+        }
+        request.end();
+
+    }
+
+    @Test
+    public void testPut_Empty() {
+
+        final String id = new ObjectId().toString();
+
+        client.put("/it/" + id, new Handler<HttpClientResponse>() {
+            @Override
+            public void handle(HttpClientResponse response) {
+                assertEquals(201, response.statusCode());
+                verifyDownload(id, 0);
+            }
+        }).end();
+
+    }
+
+    @Test
+    public void testPut_Existing() {
+
+        final String id = new ObjectId().toString();
+
+        client.put("/it/" + id, new Handler<HttpClientResponse>() {
+            @Override
+            public void handle(HttpClientResponse response) {
+                assertEquals(201, response.statusCode());
+
+                // The stored file is not overwritten
+                client.put("/it/" + id, new Handler<HttpClientResponse>() {
+                    @Override
+                    public void handle(HttpClientResponse response) {
+                        assertEquals(409, response.statusCode());
+                        verifyDownload(id, 3);
+                    }
+                }).end(new Buffer(new byte[]{9, 9, 9, 9}));
+            }
+        }).end(new Buffer(new byte[]{0, 1, 2}));
+
+    }
+
+    private void verifyDownload(String id, final int length) {
+
+        client.getNow("/it/" + id, new Handler<HttpClientResponse>() {
+            @Override
+            public void handle(HttpClientResponse response) {
+                assertEquals(200, response.statusCode());
+                assertEquals("application/octet-stream", response.headers().get("Content-Type"));
+                response.bodyHandler(new Handler<Buffer>() {
+                    @Override
+                    public void handle(Buffer body) {
+                        assertEquals(length, body.length());
+                        for (int i = 0; i < length; i++) {
+                            assertEquals((byte) i, body.getByte(i));
+                        }
+                        testComplete();
+                    }
+                });
+            }
+        });
+
+    }
+
+    @Override
+    public void start(Future<Void> startedResult) {
+        client = vertx.createHttpClient().setHost("localhost").setPort(8181);
+        IntegrationTestHelper.onVerticleStart(this, startedResult, "/http_config.json");
+    }
+
+}
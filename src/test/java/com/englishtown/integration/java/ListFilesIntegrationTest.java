@@ -0,0 +1,208 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.integration.java;
+
+import com.englishtown.vertx.GridFSModule;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.vertx.java.core.Future;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.testtools.TestVerticle;
+
+import static org.vertx.testtools.VertxAssert.assertEquals;
+import static org.vertx.testtools.VertxAssert.assertFalse;
+import static org.vertx.testtools.VertxAssert.assertNotNull;
+import static org.vertx.testtools.VertxAssert.assertNull;
+import static org.vertx.testtools.VertxAssert.assertTrue;
+import static org.vertx.testtools.VertxAssert.testComplete;
+
+/**
+ * Integration tests for the listFiles operation
+ */
+public class ListFilesIntegrationTest extends TestVerticle {
+
+    private EventBus eventBus;
+    private final String address = GridFSModule.DEFAULT_ADDRESS;
+
+    @Test
+    public void testListFiles_Unsupported_Filter() {
+
+        JsonObject message = new JsonObject()
+                .putString("action", "listFiles")
+                .putObject("filter", new JsonObject().putString("owner", "someone"));
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> message) {
+                IntegrationTestHelper.verifyErrorReply(message, "filter owner is not supported");
+            }
+        });
+
+    }
+
+    @Test
+    public void testListFiles_Invalid_Cursor() {
+
+        JsonObject message = new JsonObject()
+                .putString("action", "listFiles")
+                .putString("sort", "uploadDate")
+                .putString("after", "not-a-cursor");
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> message) {
+                IntegrationTestHelper.verifyErrorReply(message, "after is not a valid uploadDate cursor: not-a-cursor");
+            }
+        });
+
+    }
+
+    @Test
+    public void testListFiles_Batches_And_Pages() {
+
+        final String prefix = "list_" + new ObjectId().toString() + ".";
+        final String[] ids = {new ObjectId().toString(), new ObjectId().toString(), new ObjectId().toString()};
+        final long now = System.currentTimeMillis();
+
+        saveFile(ids[0], prefix + "a", now - 2000, new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                saveFile(ids[1], prefix + "b", now - 1000, new Handler<Void>() {
+                    @Override
+                    public void handle(Void event) {
+                        saveFile(ids[2], prefix + "c", now, new Handler<Void>() {
+                            @Override
+                            public void handle(Void event) {
+                                listFirstPage(prefix, ids);
+                            }
+                        });
+                    }
+                });
+            }
+        });
+
+    }
+
+    private void listFirstPage(final String prefix, final String[] ids) {
+
+        // A page of 2 in batches of 1, projected to the filename only
+        JsonObject message = new JsonObject()
+                .putString("action", "listFiles")
+                .putString("bucket", "it")
+                .putString("sort", "uploadDate")
+                .putNumber("limit", 2)
+                .putNumber("batch_size", 1)
+                .putArray("fields", new JsonArray().addString("filename"))
+                .putObject("filter", new JsonObject().putString("filename_prefix", prefix));
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                assertEquals("ok", reply.body().getString("status"));
+                assertTrue(reply.body().getBoolean("more"));
+
+                JsonArray files = reply.body().getArray("files");
+                assertEquals(1, files.size());
+                JsonObject file = files.get(0);
+                assertEquals(ids[0], file.getString("id"));
+                assertEquals(prefix + "a", file.getString("filename"));
+                assertNull(file.getField("length"));
+
+                reply.reply(new JsonObject(), new Handler<Message<JsonObject>>() {
+                    @Override
+                    public void handle(Message<JsonObject> reply) {
+                        assertEquals("ok", reply.body().getString("status"));
+                        assertFalse(reply.body().getBoolean("more"));
+                        JsonArray files = reply.body().getArray("files");
+                        assertEquals(1, files.size());
+                        assertEquals(ids[1], ((JsonObject) files.get(0)).getString("id"));
+
+                        String next = reply.body().getString("next");
+                        assertNotNull(next);
+                        listNextPage(prefix, ids, next);
+                    }
+                });
+            }
+        });
+
+    }
+
+    private void listNextPage(String prefix, final String[] ids, String after) {
+
+        JsonObject message = new JsonObject()
+                .putString("action", "listFiles")
+                .putString("bucket", "it")
+                .putString("sort", "uploadDate")
+                .putNumber("limit", 2)
+                .putString("after", after)
+                .putObject("filter", new JsonObject().putString("filename_prefix", prefix));
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                assertEquals("ok", reply.body().getString("status"));
+                assertFalse(reply.body().getBoolean("more"));
+                assertNull(reply.body().getString("next"));
+
+                JsonArray files = reply.body().getArray("files");
+                assertEquals(1, files.size());
+                assertEquals(ids[2], ((JsonObject) files.get(0)).getString("id"));
+                testComplete();
+            }
+        });
+
+    }
+
+    private void saveFile(String id, String filename, long uploadDate, final Handler<Void> next) {
+
+        JsonObject message = new JsonObject()
+                .putString("action", "saveFile")
+                .putString("id", id)
+                .putNumber("length", 1)
+                .putNumber("chunkSize", 1024)
+                .putNumber("uploadDate", uploadDate)
+                .putString("filename", filename)
+                .putString("bucket", "it");
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                assertEquals("ok", reply.body().getString("status"));
+                next.handle(null);
+            }
+        });
+
+    }
+
+    @Override
+    public void start(Future<Void> startedResult) {
+        eventBus = vertx.eventBus();
+        IntegrationTestHelper.onVerticleStart(this, startedResult, "/config.json");
+    }
+
+}
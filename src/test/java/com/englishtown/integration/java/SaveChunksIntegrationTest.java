@@ -0,0 +1,160 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.integration.java;
+
+import com.englishtown.vertx.GridFSModule;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.vertx.java.core.Future;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.testtools.TestVerticle;
+
+import java.io.UnsupportedEncodingException;
+
+import static org.vertx.testtools.VertxAssert.assertEquals;
+import static org.vertx.testtools.VertxAssert.testComplete;
+
+/**
+ * Integration tests for the saveChunks operation
+ */
+public class SaveChunksIntegrationTest extends TestVerticle {
+
+    private EventBus eventBus;
+    private final String address = GridFSModule.DEFAULT_ADDRESS + "/saveChunks";
+
+    @Test
+    public void testSaveChunks_Empty_Bytes() {
+
+        Buffer message = new Buffer();
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> message) {
+                IntegrationTestHelper.verifyErrorReply(message, "error parsing byte[] message.  see the documentation for the correct format");
+            }
+        });
+
+    }
+
+    @Test
+    public void testSaveChunks_No_Chunks() throws Exception {
+
+        Buffer message = new Buffer();
+        appendJson(message, new JsonObject());
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> message) {
+                IntegrationTestHelper.verifyErrorReply(message, "chunks are missing");
+            }
+        });
+
+    }
+
+    @Test
+    public void testSaveChunks_Invalid_Chunk() throws Exception {
+
+        String files_id = new ObjectId().toString();
+
+        Buffer message = new Buffer();
+        appendJson(message, new JsonObject().putString("bucket", "it"));
+        appendChunk(message, new JsonObject().putString("files_id", files_id).putNumber("n", 0), new byte[10]);
+        appendChunk(message, new JsonObject().putString("files_id", files_id), new byte[10]);
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> message) {
+                JsonObject body = message.body();
+                assertEquals("error", body.getString("status"));
+
+                JsonArray results = body.getArray("results");
+                assertEquals(2, results.size());
+                assertEquals("ok", ((JsonObject) results.get(0)).getString("status"));
+                assertEquals("n must be specified", ((JsonObject) results.get(1)).getString("message"));
+                testComplete();
+            }
+        });
+
+    }
+
+    @Test
+    public void testSaveChunks() throws Exception {
+
+        final String files_id = new ObjectId().toString();
+        final String bucket = "it";
+
+        Buffer message = new Buffer();
+        appendJson(message, new JsonObject().putString("bucket", bucket));
+        for (int n = 0; n < 3; n++) {
+            appendChunk(message, new JsonObject().putString("files_id", files_id).putNumber("n", n), new byte[10 + n]);
+        }
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> message) {
+                assertEquals("ok", message.body().getString("status"));
+                assertEquals(3, message.body().getArray("results").size());
+
+                JsonObject jsonObject = new JsonObject()
+                        .putString("action", "getChunk")
+                        .putString("files_id", files_id)
+                        .putNumber("n", 2)
+                        .putString("bucket", bucket);
+
+                eventBus.send(GridFSModule.DEFAULT_ADDRESS, jsonObject, new Handler<Message<byte[]>>() {
+                    @Override
+                    public void handle(Message<byte[]> reply) {
+                        assertEquals(12, reply.body().length);
+                        testComplete();
+                    }
+                });
+            }
+        });
+
+    }
+
+    private void appendJson(Buffer buffer, JsonObject jsonObject) throws UnsupportedEncodingException {
+        byte[] jsonBytes = jsonObject.encode().getBytes("UTF-8");
+        buffer.appendInt(jsonBytes.length);
+        buffer.appendBytes(jsonBytes);
+    }
+
+    private void appendChunk(Buffer buffer, JsonObject jsonObject, byte[] data) throws UnsupportedEncodingException {
+        appendJson(buffer, jsonObject);
+        buffer.appendInt(data.length);
+        buffer.appendBytes(data);
+    }
+
+    @Override
+    public void start(Future<Void> startedResult) {
+        eventBus = vertx.eventBus();
+        IntegrationTestHelper.onVerticleStart(this, startedResult, "/config.json");
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.integration.java;
+
+import com.englishtown.vertx.GridFSModule;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.vertx.java.core.Future;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.testtools.TestVerticle;
+
+import java.io.UnsupportedEncodingException;
+
+import static org.vertx.testtools.VertxAssert.assertEquals;
+import static org.vertx.testtools.VertxAssert.testComplete;
+
+/**
+ * Integration tests for the startUpload, appendData and finishUpload operations
+ */
+public class UploadIntegrationTest extends TestVerticle {
+
+    private EventBus eventBus;
+    private final String address = GridFSModule.DEFAULT_ADDRESS;
+
+    @Test
+    public void testFinishUpload_Not_Started() {
+
+        final String id = new ObjectId().toString();
+        JsonObject message = new JsonObject()
+                .putString("action", "finishUpload")
+                .putString("id", id);
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> message) {
+                IntegrationTestHelper.verifyErrorReply(message, "upload " + id + " is not in progress");
+            }
+        });
+
+    }
+
+    @Test
+    public void testUpload() {
+
+        JsonObject message = new JsonObject()
+                .putString("action", "startUpload")
+                .putNumber("chunkSize", 10)
+                .putString("filename", "upload.bin")
+                .putString("contentType", "application/octet-stream")
+                .putString("bucket", "it");
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                assertEquals("ok", reply.body().getString("status"));
+                append(reply.body().getString("id"), 0, new int[]{7, 15, 3});
+            }
+        });
+
+    }
+
+    private void append(final String id, final int index, final int[] sizes) {
+
+        if (index == sizes.length) {
+            finish(id);
+            return;
+        }
+
+        JsonObject jsonObject = new JsonObject().putString("id", id);
+        Buffer buffer;
+        try {
+            buffer = getMessage(jsonObject, new byte[sizes[index]]);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+
+        eventBus.send(address + "/appendData", buffer, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                assertEquals("ok", reply.body().getString("status"));
+                append(id, index + 1, sizes);
+            }
+        });
+
+    }
+
+    private void finish(final String id) {
+
+        JsonObject message = new JsonObject()
+                .putString("action", "finishUpload")
+                .putString("id", id);
+
+        eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                assertEquals("ok", reply.body().getString("status"));
+                assertEquals(25, reply.body().getInteger("length").intValue());
+
+                JsonObject message = new JsonObject()
+                        .putString("action", "getFile")
+                        .putString("id", id)
+                        .putString("bucket", "it");
+
+                eventBus.send(address, message, new Handler<Message<JsonObject>>() {
+                    @Override
+                    public void handle(Message<JsonObject> reply) {
+                        assertEquals("ok", reply.body().getString("status"));
+                        assertEquals(25, reply.body().getInteger("length").intValue());
+                        assertEquals(10, reply.body().getInteger("chunkSize").intValue());
+                        assertEquals("upload.bin", reply.body().getString("filename"));
+                        testComplete();
+                    }
+                });
+            }
+        });
+
+    }
+
+    private Buffer getMessage(JsonObject jsonObject, byte[] data) throws UnsupportedEncodingException {
+
+        Buffer buffer = new Buffer();
+        byte[] jsonBytes = jsonObject.encode().getBytes("UTF-8");
+
+        buffer.appendInt(jsonBytes.length);
+        buffer.appendBytes(jsonBytes);
+        buffer.appendBytes(data);
+
+        return buffer;
+    }
+
+    @Override
+    public void start(Future<Void> startedResult) {
+        eventBus = vertx.eventBus();
+        IntegrationTestHelper.onVerticleStart(this, startedResult, "/config.json");
+    }
+
+}
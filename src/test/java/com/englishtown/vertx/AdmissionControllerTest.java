@@ -0,0 +1,107 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import org.junit.Test;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit tests for {@link AdmissionController}
+ */
+public class AdmissionControllerTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testGlobal_Limit() {
+        AdmissionController controller = new AdmissionController(2,
+                new AdmissionController.Limiter(1, 10, 100, 0.5),
+                new AdmissionController.Limiter(1, 10, 100, 0.5));
+
+        AdmissionController.Permit first = controller.acquire(false);
+        assertNotNull(first);
+        assertNotNull(controller.acquire(true));
+        assertNull(controller.acquire(false));
+
+        first.cancel();
+        assertNotNull(controller.acquire(false));
+
+        JsonObject stats = controller.getStats();
+        assertEquals(2, stats.getInteger("inFlight").intValue());
+        assertEquals(1L, stats.getLong("rejected").longValue());
+    }
+
+    @Test
+    public void testLane_Limit() {
+        AdmissionController controller = new AdmissionController(10,
+                new AdmissionController.Limiter(1, 1, 100, 0.5),
+                new AdmissionController.Limiter(1, 10, 100, 0.5));
+
+        assertNotNull(controller.acquire(false));
+        assertNull(controller.acquire(false));
+        // Writes have their own limit
+        assertNotNull(controller.acquire(true));
+
+        JsonObject stats = controller.getStats();
+        assertEquals(1L, stats.getObject("read").getLong("rejected").longValue());
+        assertEquals(0L, stats.getLong("rejected").longValue());
+        assertEquals(2, stats.getInteger("inFlight").intValue());
+    }
+
+    @Test
+    public void testAdaptive_Limit() {
+        AdmissionController.Limiter limiter = new AdmissionController.Limiter(2, 8, 100, 0.5);
+        long now = System.nanoTime();
+
+        // A slow request halves the limit, further slow requests in the same period do not
+        limiter.update(200 * MS, now);
+        assertEquals(4, limiter.getLimit());
+        limiter.update(200 * MS, now + 10 * MS);
+        assertEquals(4, limiter.getLimit());
+
+        now += 100 * MS;
+        limiter.update(200 * MS, now);
+        assertEquals(2, limiter.getLimit());
+        now += 100 * MS;
+        limiter.update(200 * MS, now);
+        assertEquals(2, limiter.getLimit());
+
+        // A limit's worth of fast requests grows it by one
+        limiter.update(10 * MS, now);
+        assertEquals(2, limiter.getLimit());
+        limiter.update(10 * MS, now);
+        assertEquals(3, limiter.getLimit());
+        for (int i = 0; i < 100; i++) {
+            limiter.update(10 * MS, now);
+        }
+        assertEquals(8, limiter.getLimit());
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link Bulkheads}
+ */
+public class BulkheadsTest {
+
+    private MessageExecutor read;
+    private MessageExecutor write;
+    private MessageExecutor imports;
+    private Bulkheads bulkheads;
+
+    @Before
+    public void setUp() {
+        read = new MessageExecutor(null, "read", 1, 10);
+        write = new MessageExecutor(null, "write", 1, 10);
+        imports = new MessageExecutor(null, "imports", 1, 10);
+        Map<String, MessageExecutor> buckets = new HashMap<>();
+        buckets.put("imports", imports);
+        bulkheads = new Bulkheads(read, write, buckets);
+    }
+
+    @After
+    public void tearDown() {
+        bulkheads.shutdown(1000);
+    }
+
+    @Test
+    public void testSelect() {
+        assertTrue(bulkheads.hasBucketLanes());
+        assertSame(read, bulkheads.select("fs", false));
+        assertSame(write, bulkheads.select("fs", true));
+        assertSame(read, bulkheads.select(null, false));
+        assertSame(imports, bulkheads.select("imports", false));
+        assertSame(imports, bulkheads.select("imports", true));
+    }
+
+    @Test
+    public void testStats() {
+        JsonObject stats = bulkheads.getStats();
+        assertEquals(0L, stats.getObject("read").getLong("rejected").longValue());
+        assertEquals(0L, stats.getObject("write").getLong("rejected").longValue());
+        assertEquals(0L, stats.getObject("buckets").getObject("imports").getLong("rejected").longValue());
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import org.bson.types.ObjectId;
+import org.junit.After;
+import org.junit.Test;
+import org.vertx.java.core.json.JsonObject;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ChunkCache}
+ */
+public class ChunkCacheTest {
+
+    private final ChunkCache cache = new ChunkCache(30, 20);
+    private final ObjectId id = new ObjectId();
+
+    @After
+    public void tearDown() {
+        cache.clear();
+    }
+
+    @Test
+    public void testGet_Hit_And_Miss() {
+
+        assertNull(cache.get("fs", id, 0));
+        assertTrue(cache.put("fs", id, 0, new byte[]{1, 2, 3}, cache.getVersion("fs", id)));
+        assertArrayEquals(new byte[]{1, 2, 3}, cache.get("fs", id, 0));
+        assertNull(cache.get("other", id, 0));
+
+        JsonObject stats = cache.getStats();
+        assertEquals(1L, stats.getLong("hits").longValue());
+        assertEquals(2L, stats.getLong("misses").longValue());
+        assertEquals(3L, stats.getLong("bytes").longValue());
+
+    }
+
+    @Test
+    public void testPut_Evicts_Least_Recently_Used() {
+
+        long version = cache.getVersion("fs", id);
+        cache.put("fs", id, 0, new byte[10], version);
+        cache.put("fs", id, 1, new byte[10], version);
+        cache.put("fs", id, 2, new byte[10], version);
+
+        // Touch chunk 0 so chunk 1 is the eldest
+        assertNotNull(cache.get("fs", id, 0));
+        cache.put("fs", id, 3, new byte[10], version);
+
+        assertNotNull(cache.get("fs", id, 0));
+        assertNull(cache.get("fs", id, 1));
+        assertNotNull(cache.get("fs", id, 2));
+        assertNotNull(cache.get("fs", id, 3));
+
+        JsonObject stats = cache.getStats();
+        assertEquals(1L, stats.getLong("evictions").longValue());
+        assertEquals(30L, stats.getLong("bytes").longValue());
+
+    }
+
+    @Test
+    public void testPut_Too_Large() {
+        assertFalse(cache.put("fs", id, 0, new byte[21], cache.getVersion("fs", id)));
+        assertNull(cache.get("fs", id, 0));
+    }
+
+    @Test
+    public void testInvalidate() {
+
+        ObjectId other = new ObjectId();
+        cache.put("fs", id, 0, new byte[5], cache.getVersion("fs", id));
+        cache.put("fs", id, 1, new byte[5], cache.getVersion("fs", id));
+        cache.put("fs", other, 0, new byte[5], cache.getVersion("fs", other));
+
+        cache.invalidate("fs", id);
+
+        assertNull(cache.get("fs", id, 0));
+        assertNull(cache.get("fs", id, 1));
+        assertNotNull(cache.get("fs", other, 0));
+
+        JsonObject stats = cache.getStats();
+        assertEquals(2L, stats.getLong("invalidations").longValue());
+        assertEquals(5L, stats.getLong("bytes").longValue());
+
+    }
+
+    @Test
+    public void testPut_Rejects_Data_Read_Before_Invalidate() {
+
+        long version = cache.getVersion("fs", id);
+        cache.invalidate("fs", id);
+
+        assertFalse(cache.put("fs", id, 0, new byte[5], version));
+        assertNull(cache.get("fs", id, 0));
+
+    }
+
+}
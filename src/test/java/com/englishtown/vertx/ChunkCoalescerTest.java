@@ -0,0 +1,177 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.VertxFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ChunkCoalescer}
+ */
+public class ChunkCoalescerTest {
+
+    private Vertx vertx;
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    private final List<String> replies = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() {
+        vertx = VertxFactory.newVertx();
+    }
+
+    @After
+    public void tearDown() {
+        vertx.stop();
+    }
+
+    @Test
+    public void testAdd_Flushes_On_Max_Chunks() {
+
+        ChunkCoalescer coalescer = new ChunkCoalescer(vertx, writer(null), 3, Long.MAX_VALUE, 60000);
+
+        for (int i = 0; i < 7; i++) {
+            coalescer.add("fs", "ACKNOWLEDGED", new BasicDBObject("n", i), 10, reply(null));
+        }
+
+        assertEquals(2, batchSizes.size());
+        assertEquals(3, (int) batchSizes.get(0));
+        assertEquals(6, replies.size());
+
+        coalescer.flushAll();
+        assertEquals(1, (int) batchSizes.get(2));
+        assertEquals(7, replies.size());
+
+    }
+
+    @Test
+    public void testAdd_Flushes_On_Max_Bytes() {
+
+        ChunkCoalescer coalescer = new ChunkCoalescer(vertx, writer(null), 100, 25, 60000);
+
+        coalescer.add("fs", "ACKNOWLEDGED", new BasicDBObject("n", 0), 10, reply(null));
+        coalescer.add("fs", "ACKNOWLEDGED", new BasicDBObject("n", 1), 10, reply(null));
+        assertTrue(batchSizes.isEmpty());
+
+        coalescer.add("fs", "ACKNOWLEDGED", new BasicDBObject("n", 2), 10, reply(null));
+        assertEquals(Collections.singletonList(3), batchSizes);
+
+    }
+
+    @Test
+    public void testAdd_Flushes_After_Max_Delay() throws Exception {
+
+        CountDownLatch latch = new CountDownLatch(2);
+        ChunkCoalescer coalescer = new ChunkCoalescer(vertx, writer(null), 100, Long.MAX_VALUE, 20);
+
+        coalescer.add("fs", "ACKNOWLEDGED", new BasicDBObject("n", 0), 10, reply(latch));
+        coalescer.add("fs", "ACKNOWLEDGED", new BasicDBObject("n", 1), 10, reply(latch));
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(2), batchSizes);
+
+    }
+
+    @Test
+    public void testAdd_Separate_Batches_Per_Bucket() {
+
+        ChunkCoalescer coalescer = new ChunkCoalescer(vertx, writer(null), 2, Long.MAX_VALUE, 60000);
+
+        coalescer.add("a", "ACKNOWLEDGED", new BasicDBObject("n", 0), 10, reply(null));
+        coalescer.add("b", "ACKNOWLEDGED", new BasicDBObject("n", 0), 10, reply(null));
+        assertTrue(batchSizes.isEmpty());
+
+        coalescer.add("a", "ACKNOWLEDGED", new BasicDBObject("n", 1), 10, reply(null));
+        assertEquals(Collections.singletonList(2), batchSizes);
+
+    }
+
+    @Test
+    public void testAdd_Separate_Batches_Per_Write_Concern() {
+
+        ChunkCoalescer coalescer = new ChunkCoalescer(vertx, writer(null), 2, Long.MAX_VALUE, 60000);
+
+        coalescer.add("fs", "ACKNOWLEDGED", new BasicDBObject("n", 0), 10, reply(null));
+        coalescer.add("fs", "UNACKNOWLEDGED", new BasicDBObject("n", 1), 10, reply(null));
+        assertTrue(batchSizes.isEmpty());
+
+        coalescer.flushAll();
+        assertEquals(2, batchSizes.size());
+
+    }
+
+    @Test
+    public void testAdd_Replies_With_Per_Chunk_Errors() {
+
+        ChunkCoalescer coalescer = new ChunkCoalescer(vertx, writer("duplicate"), 2, Long.MAX_VALUE, 60000);
+
+        coalescer.add("fs", "ACKNOWLEDGED", new BasicDBObject("n", 0), 10, reply(null));
+        coalescer.add("fs", "ACKNOWLEDGED", new BasicDBObject("n", 1), 10, reply(null));
+
+        assertEquals("ok", replies.get(0));
+        assertEquals("duplicate", replies.get(1));
+
+    }
+
+    private ChunkCoalescer.Writer writer(final String lastError) {
+        return new ChunkCoalescer.Writer() {
+            @Override
+            public List<String> write(String bucket, String writeConcern, List<DBObject> chunks) {
+                batchSizes.add(chunks.size());
+                List<String> errors = new ArrayList<>();
+                for (int i = 0; i < chunks.size(); i++) {
+                    errors.add(i == chunks.size() - 1 ? lastError : null);
+                }
+                return errors;
+            }
+        };
+    }
+
+    private Handler<String> reply(final CountDownLatch latch) {
+        return new Handler<String>() {
+            @Override
+            public void handle(String error) {
+                replies.add(error == null ? "ok" : error);
+                if (latch != null) {
+                    latch.countDown();
+                }
+            }
+        };
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of chunk compression codec throughput at typical chunk sizes.
+ * <p>
+ * Run org.openjdk.jmh.Main ChunkCompressorBenchmark with the test classpath after mvn test-compile.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChunkCompressorBenchmark {
+
+    @Param({"deflate", "lz4"})
+    public String codec;
+
+    @Param({"1", "6"})
+    public int level;
+
+    @Param({"262144", "1048576"})
+    public int chunkSize;
+
+    private ChunkCompressor compressor;
+    private ByteBuf data;
+    private byte[] compressed;
+
+    @Setup
+    public void setUp() {
+        compressor = new ChunkCompressor(codec, "lz4".equals(codec) && level == 1 ? 0 : level, 1.0);
+        data = Unpooled.wrappedBuffer(ChunkCompressorTest.createText(chunkSize));
+        compressed = compressor.compress(data);
+    }
+
+    @Benchmark
+    public byte[] compress() {
+        return compressor.compress(data);
+    }
+
+    @Benchmark
+    public byte[] decompress() {
+        return ChunkCompressor.decompress(codec, compressed, chunkSize);
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ChunkCompressor}
+ */
+public class ChunkCompressorTest {
+
+    @Test
+    public void testDeflate_Round_Trip() {
+        verifyRoundTrip(new ChunkCompressor(ChunkCompressor.DEFLATE, 6, 1.1));
+    }
+
+    @Test
+    public void testLz4_Round_Trip() {
+        verifyRoundTrip(new ChunkCompressor(ChunkCompressor.LZ4, 0, 1.1));
+    }
+
+    @Test
+    public void testLz4_High_Round_Trip() {
+        verifyRoundTrip(new ChunkCompressor(ChunkCompressor.LZ4, 9, 1.1));
+    }
+
+    @Test
+    public void testCompress_Below_Min_Ratio() {
+
+        byte[] random = new byte[64 * 1024];
+        new Random(1).nextBytes(random);
+
+        assertNull(new ChunkCompressor(ChunkCompressor.DEFLATE, 6, 1.1).compress(Unpooled.wrappedBuffer(random)));
+        assertNull(new ChunkCompressor(ChunkCompressor.LZ4, 0, 1.1).compress(Unpooled.wrappedBuffer(random)));
+
+    }
+
+    @Test
+    public void testCreate_Defaults() {
+        ChunkCompressor compressor = ChunkCompressor.create(new JsonObject());
+        assertEquals(ChunkCompressor.DEFLATE, compressor.getCodec());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCreate_Unknown_Codec() {
+        ChunkCompressor.create(new JsonObject().putString("codec", "zip"));
+    }
+
+    private void verifyRoundTrip(ChunkCompressor compressor) {
+
+        byte[] text = createText(256 * 1024);
+
+        // Compress a slice so the array offset is exercised
+        byte[] frame = new byte[text.length + 10];
+        System.arraycopy(text, 0, frame, 10, text.length);
+        ByteBuf data = Unpooled.wrappedBuffer(frame).slice(10, text.length);
+
+        byte[] compressed = compressor.compress(data);
+        assertNotNull(compressed);
+        assertTrue(compressed.length < text.length / 2);
+        assertEquals(text.length, data.readableBytes());
+
+        assertArrayEquals(text, ChunkCompressor.decompress(compressor.getCodec(), compressed, text.length));
+
+    }
+
+    static byte[] createText(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        Random random = new Random(1);
+        while (sb.length() < length) {
+            sb.append("{\"id\":").append(random.nextInt(100000))
+                    .append(",\"name\":\"lesson ").append(random.nextInt(1000))
+                    .append("\",\"transcript\":\"the quick brown fox jumps over the lazy dog\"}\n");
+        }
+        sb.setLength(length);
+        return sb.toString().getBytes();
+    }
+
+}
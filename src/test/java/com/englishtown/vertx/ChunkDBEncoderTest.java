@@ -0,0 +1,141 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.DBEncoder;
+import com.mongodb.DBObject;
+import com.mongodb.DefaultDBEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.bson.BSONObject;
+import org.bson.BasicBSONDecoder;
+import org.bson.io.PoolOutputBuffer;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Unit tests for {@link ChunkDBEncoder}
+ */
+public class ChunkDBEncoderTest {
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int ITERATIONS = 50;
+
+    @Test
+    public void testEncode_ByteBuf_Slice() {
+
+        byte[] message = new byte[100];
+        for (int i = 0; i < message.length; i++) {
+            message[i] = (byte) i;
+        }
+
+        // Slice the payload out of a larger frame the same way saveChunk does
+        ByteBuf data = Unpooled.wrappedBuffer(message).slice(20, 80);
+        DBObject chunk = BasicDBObjectBuilder.start()
+                .add("files_id", new ObjectId())
+                .add("n", 0)
+                .add("data", data)
+                .get();
+
+        PoolOutputBuffer buffer = new PoolOutputBuffer();
+        new ChunkDBEncoder().writeObject(buffer, chunk);
+
+        BSONObject decoded = new BasicBSONDecoder().readObject(buffer.toByteArray());
+        assertArrayEquals(Arrays.copyOfRange(message, 20, 100), (byte[]) decoded.get("data"));
+
+    }
+
+    @Test
+    public void testEncode_Allocations_Per_Chunk() {
+
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threadMXBean;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled());
+
+        // A 4 byte json length, the json and then the chunk, as sent to the saveChunk address
+        ByteBuf frame = Unpooled.buffer(CHUNK_SIZE + 64);
+        frame.writeInt(0);
+        frame.writeBytes(new byte[CHUNK_SIZE]);
+
+        long zeroCopy = measure(allocations, frame, new ChunkDBEncoder(), true);
+        long copied = measure(allocations, frame, new DefaultDBEncoder(), false);
+
+        String measured = "bytes allocated per " + CHUNK_SIZE + " byte chunk: zero copy " + zeroCopy
+                + ", byte[] copy " + copied;
+        assertTrue("zero copy path allocated too much, " + measured, zeroCopy < CHUNK_SIZE / 16);
+        assertTrue("byte[] copy path allocated too little, " + measured, copied >= CHUNK_SIZE);
+
+    }
+
+    private long measure(com.sun.management.ThreadMXBean allocations, ByteBuf frame, DBEncoder encoder, boolean slice) {
+
+        long threadId = Thread.currentThread().getId();
+        PoolOutputBuffer buffer = new PoolOutputBuffer();
+
+        // Warm up and grow the pooled output buffer, the driver reuses these across writes
+        encode(frame, encoder, slice, buffer);
+
+        long start = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            encode(frame, encoder, slice, buffer);
+        }
+        return (allocations.getThreadAllocatedBytes(threadId) - start) / ITERATIONS;
+
+    }
+
+    private void encode(ByteBuf frame, DBEncoder encoder, boolean slice, PoolOutputBuffer buffer) {
+
+        int from = 4 + frame.getInt(0);
+        int length = frame.writerIndex() - from;
+        Object data;
+        if (slice) {
+            data = frame.slice(from, length);
+        } else {
+            byte[] bytes = new byte[length];
+            frame.getBytes(from, bytes);
+            data = bytes;
+        }
+
+        DBObject chunk = BasicDBObjectBuilder.start()
+                .add("files_id", new ObjectId())
+                .add("n", 0)
+                .add("data", data)
+                .get();
+
+        buffer.reset();
+        encoder.writeObject(buffer, chunk);
+
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ChunkPrefetcher}
+ */
+public class ChunkPrefetcherTest {
+
+    private ChunkPrefetcher prefetcher;
+
+    @After
+    public void tearDown() {
+        if (prefetcher != null) {
+            prefetcher.shutdown();
+        }
+    }
+
+    @Test
+    public void testTake_In_Order() throws Exception {
+
+        prefetcher = new ChunkPrefetcher(2, 1024, 1024, 10, 1, 5000);
+        TestSource source = new TestSource(5, 10);
+        ChunkPrefetcher.Stream stream = prefetcher.open(source);
+
+        for (int n = 0; n < 5; n++) {
+            ChunkPrefetcher.Chunk chunk = stream.take();
+            assertEquals(n, chunk.getN());
+            assertEquals(10, chunk.getData().length);
+        }
+
+        assertNull(stream.take());
+        assertTrue(source.closed.await(1, TimeUnit.SECONDS));
+
+    }
+
+    @Test
+    public void testWindow_Is_Bounded() throws Exception {
+
+        prefetcher = new ChunkPrefetcher(100, 25, 1024, 10, 1, 5000);
+        TestSource source = new TestSource(100, 10);
+        ChunkPrefetcher.Stream stream = prefetcher.open(source);
+
+        assertEquals(0, stream.take().getN());
+        Thread.sleep(100);
+
+        // 1 taken, then the window fills until it holds at least 25 bytes
+        assertEquals(4, source.read.get());
+
+        stream.close();
+        assertTrue(source.closed.await(1, TimeUnit.SECONDS));
+        assertEquals(0, prefetcher.getStreamCount());
+
+    }
+
+    @Test
+    public void testTotal_Bytes_Are_Shared() throws Exception {
+
+        prefetcher = new ChunkPrefetcher(100, 1024, 25, 10, 1, 5000);
+        TestSource first = new TestSource(100, 10);
+        prefetcher.open(first);
+        Thread.sleep(100);
+
+        // The first stream uses up the shared budget
+        assertEquals(3, first.read.get());
+        assertEquals(30, prefetcher.getTotalBytes());
+
+        // A second stream only reads the chunk its client waits for
+        TestSource second = new TestSource(100, 10);
+        ChunkPrefetcher.Stream stream = prefetcher.open(second);
+        Thread.sleep(100);
+        assertEquals(1, second.read.get());
+
+        assertEquals(0, stream.take().getN());
+        Thread.sleep(100);
+        assertEquals(2, second.read.get());
+
+        stream.close();
+        assertEquals(30, prefetcher.getTotalBytes());
+
+    }
+
+    @Test
+    public void testMax_Streams() throws Exception {
+
+        prefetcher = new ChunkPrefetcher(2, 1024, 1024, 1, 1, 5000);
+
+        assertNotNull(prefetcher.open(new TestSource(1, 10)));
+        assertNull(prefetcher.open(new TestSource(1, 10)));
+
+    }
+
+    @Test
+    public void testExpire_Closes_Idle_Streams() throws Exception {
+
+        prefetcher = new ChunkPrefetcher(2, 1024, 1024, 10, 1, 50);
+        TestSource source = new TestSource(10, 10);
+        prefetcher.open(source);
+
+        Thread.sleep(100);
+        prefetcher.expire();
+
+        assertTrue(source.closed.await(1, TimeUnit.SECONDS));
+        assertEquals(0, prefetcher.getStreamCount());
+
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void testTake_Timeout() throws Exception {
+
+        prefetcher = new ChunkPrefetcher(2, 1024, 1024, 10, 1, 50);
+        ChunkPrefetcher.Stream stream = prefetcher.open(new TestSource(10, 10) {
+            @Override
+            public ChunkPrefetcher.Chunk next() {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.next();
+            }
+        });
+
+        stream.take();
+
+    }
+
+    @Test
+    public void testSource_Error() throws Exception {
+
+        prefetcher = new ChunkPrefetcher(2, 1024, 1024, 10, 1, 5000);
+        ChunkPrefetcher.Stream stream = prefetcher.open(new TestSource(10, 10) {
+            @Override
+            public ChunkPrefetcher.Chunk next() {
+                if (read.get() == 1) {
+                    throw new IllegalStateException("cursor failed");
+                }
+                return super.next();
+            }
+        });
+
+        assertEquals(0, stream.take().getN());
+        try {
+            stream.take();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("cursor failed", e.getMessage());
+        }
+
+    }
+
+    private static class TestSource implements ChunkPrefetcher.Source {
+
+        private final int count;
+        private final int size;
+        protected final AtomicInteger read = new AtomicInteger();
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        private TestSource(int count, int size) {
+            this.count = count;
+            this.size = size;
+        }
+
+        @Override
+        public ChunkPrefetcher.Chunk next() {
+            int n = read.get();
+            if (n >= count) {
+                return null;
+            }
+            read.incrementAndGet();
+            return new ChunkPrefetcher.Chunk(n, new byte[size]);
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoClient;
+import com.mongodb.WriteConcern;
+import com.mongodb.gridfs.GridFS;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark comparing the per chunk save latency of the original write path, which created a {@link GridFS} and
+ * so ran count and ensureIndex on every save, with the {@link IndexManager} path that ensures the indexes once.
+ * <p>
+ * Needs a MongoDB server on localhost:27017, like the integration tests.  Run org.openjdk.jmh.Main ChunkSaveBenchmark
+ * with the test classpath after mvn test-compile.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChunkSaveBenchmark {
+
+    private static final String BUCKET = "benchmark";
+
+    private MongoClient mongo;
+    private DB db;
+    private DBCollection chunks;
+    private IndexManager indexManager;
+    private ObjectId filesId;
+    private int n;
+    private final byte[] data = new byte[16 * 1024];
+
+    @Setup
+    public void setUp() throws Exception {
+        mongo = new MongoClient("localhost", 27017);
+        db = mongo.getDB("default_db");
+        chunks = db.getCollection(BUCKET + ".chunks");
+        indexManager = new IndexManager(db);
+        filesId = new ObjectId();
+    }
+
+    @TearDown
+    public void tearDown() {
+        chunks.remove(new BasicDBObject("files_id", filesId));
+        mongo.close();
+    }
+
+    private DBObject nextChunk() {
+        return BasicDBObjectBuilder.start()
+                .add("files_id", filesId)
+                .add("n", n++)
+                .add("data", data)
+                .get();
+    }
+
+    @Benchmark
+    public Object unmanaged() {
+        new GridFS(db, BUCKET);
+        return chunks.save(nextChunk(), WriteConcern.ACKNOWLEDGED);
+    }
+
+    @Benchmark
+    public Object managed() {
+        indexManager.ensureChunksIndex(BUCKET);
+        return chunks.save(nextChunk(), WriteConcern.ACKNOWLEDGED);
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoClient;
+import com.mongodb.WriteConcern;
+import io.netty.buffer.Unpooled;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark comparing saving a chunk whose body is already in the {@link DedupStore}, which writes the chunk
+ * document with only the hash and increments the reference count, with a full write of the chunk data.
+ * <p>
+ * Needs a MongoDB server on localhost:27017, like the integration tests.  Run org.openjdk.jmh.Main DedupBenchmark
+ * with the test classpath after mvn test-compile.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DedupBenchmark {
+
+    private static final String BUCKET = "benchmark";
+
+    @Param({"16384", "261120"})
+    public int chunkSize;
+
+    private MongoClient mongo;
+    private DBCollection chunks;
+    private DBCollection blobs;
+    private DedupStore dedupStore;
+    private ObjectId filesId;
+    private int n;
+    private byte[] data;
+    private String hash;
+    private DBObject body;
+
+    @Setup
+    public void setUp() throws Exception {
+        mongo = new MongoClient("localhost", 27017);
+        DB db = mongo.getDB("default_db");
+        chunks = db.getCollection(BUCKET + ".chunks");
+        blobs = db.getCollection(BUCKET + ".blobs");
+        dedupStore = new DedupStore(db);
+        filesId = new ObjectId();
+
+        data = new byte[chunkSize];
+        new Random(0).nextBytes(data);
+        hash = dedupStore.hash(Unpooled.wrappedBuffer(data));
+        body = new BasicDBObject("data", data);
+
+        // Every measured save of the hit path finds the body already stored
+        dedupStore.store(BUCKET, hash, body);
+    }
+
+    @TearDown
+    public void tearDown() {
+        chunks.remove(new BasicDBObject("files_id", filesId));
+        blobs.remove(new BasicDBObject("_id", hash));
+        mongo.close();
+    }
+
+    @Benchmark
+    public void fullWrite() {
+        chunks.insert(BasicDBObjectBuilder.start()
+                .add("files_id", filesId)
+                .add("n", n++)
+                .add("data", data)
+                .get(), WriteConcern.ACKNOWLEDGED);
+    }
+
+    @Benchmark
+    public void dedupHit() {
+        chunks.insert(BasicDBObjectBuilder.start()
+                .add("files_id", filesId)
+                .add("n", n++)
+                .add(DedupStore.BLOB_FIELD, hash)
+                .get(), WriteConcern.ACKNOWLEDGED);
+        dedupStore.store(BUCKET, hash, body);
+    }
+
+}
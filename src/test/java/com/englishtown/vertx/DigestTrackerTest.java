@@ -0,0 +1,117 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import io.netty.buffer.Unpooled;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link DigestTracker}
+ */
+public class DigestTrackerTest {
+
+    private final byte[][] chunks = {"hello ".getBytes(), "gridfs ".getBytes(), "world".getBytes()};
+
+    @Test
+    public void testFinish_In_Order() throws Exception {
+
+        DigestTracker tracker = new DigestTracker(Arrays.asList("MD5", "SHA-256"), 1024);
+        ObjectId id = new ObjectId();
+
+        for (int n = 0; n < chunks.length; n++) {
+            tracker.update(id, n, Unpooled.wrappedBuffer(chunks[n]));
+        }
+
+        DigestTracker.Result result = tracker.finish(id);
+        assertEquals(18, result.getLength());
+        assertEquals(expected("MD5"), result.getDigests().get("md5"));
+        assertEquals(expected("SHA-256"), result.getDigests().get("sha256"));
+        assertNull(tracker.finish(id));
+
+    }
+
+    @Test
+    public void testFinish_Out_Of_Order_And_Retried() throws Exception {
+
+        DigestTracker tracker = new DigestTracker(Arrays.asList("MD5"), 1024);
+        ObjectId id = new ObjectId();
+
+        tracker.update(id, 2, Unpooled.wrappedBuffer(chunks[2]));
+        tracker.update(id, 1, Unpooled.wrappedBuffer(chunks[1]));
+        tracker.update(id, 0, Unpooled.wrappedBuffer(chunks[0]));
+        tracker.update(id, 1, Unpooled.wrappedBuffer(chunks[1]));
+
+        DigestTracker.Result result = tracker.finish(id);
+        assertEquals(18, result.getLength());
+        assertEquals(expected("MD5"), result.getDigests().get("md5"));
+
+    }
+
+    @Test
+    public void testFinish_Gap() {
+
+        DigestTracker tracker = new DigestTracker(Arrays.asList("MD5"), 1024);
+        ObjectId id = new ObjectId();
+
+        tracker.update(id, 0, Unpooled.wrappedBuffer(chunks[0]));
+        tracker.update(id, 2, Unpooled.wrappedBuffer(chunks[2]));
+
+        assertNull(tracker.finish(id));
+
+    }
+
+    @Test
+    public void testFinish_Pending_Overflow() {
+
+        DigestTracker tracker = new DigestTracker(Arrays.asList("MD5"), 8);
+        ObjectId id = new ObjectId();
+
+        tracker.update(id, 2, Unpooled.wrappedBuffer(chunks[2]));
+        tracker.update(id, 1, Unpooled.wrappedBuffer(chunks[1]));
+        tracker.update(id, 0, Unpooled.wrappedBuffer(chunks[0]));
+
+        assertNull(tracker.finish(id));
+
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknown_Algorithm() {
+        new DigestTracker(Arrays.asList("NOPE"), 1024);
+    }
+
+    private String expected(String algorithm) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance(algorithm);
+        for (byte[] chunk : chunks) {
+            digest.update(chunk);
+        }
+        return DigestTracker.toHex(digest.digest());
+    }
+
+}
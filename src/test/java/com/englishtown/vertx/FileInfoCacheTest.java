@@ -0,0 +1,114 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.vertx.java.core.json.JsonObject;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link FileInfoCache}
+ */
+public class FileInfoCacheTest {
+
+    private final ObjectId id = new ObjectId();
+
+    @Test
+    public void testGet_Returns_Copy() {
+
+        FileInfoCache cache = new FileInfoCache(10, 60000, 1000);
+        assertNull(cache.get("fs", id));
+
+        cache.put("fs", id, new JsonObject().putString("filename", "a.txt"), cache.getVersion("fs", id));
+        JsonObject fileInfo = cache.get("fs", id).getFileInfo();
+        assertEquals("a.txt", fileInfo.getString("filename"));
+
+        fileInfo.putString("status", "ok");
+        assertNull(cache.get("fs", id).getFileInfo().getString("status"));
+
+        JsonObject stats = cache.getStats();
+        assertEquals(2L, stats.getLong("hits").longValue());
+        assertEquals(1L, stats.getLong("misses").longValue());
+
+    }
+
+    @Test
+    public void testNegative_Entries() throws Exception {
+
+        FileInfoCache cache = new FileInfoCache(10, 60000, 20);
+        cache.put("fs", id, null, cache.getVersion("fs", id));
+
+        FileInfoCache.Entry entry = cache.get("fs", id);
+        assertNotNull(entry);
+        assertNull(entry.getFileInfo());
+
+        Thread.sleep(40);
+        assertNull(cache.get("fs", id));
+
+    }
+
+    @Test
+    public void testNegative_Entries_Disabled() {
+        FileInfoCache cache = new FileInfoCache(10, 60000, 0);
+        assertFalse(cache.put("fs", id, null, cache.getVersion("fs", id)));
+    }
+
+    @Test
+    public void testMax_Entries() {
+
+        FileInfoCache cache = new FileInfoCache(2, 60000, 1000);
+        ObjectId id2 = new ObjectId();
+        ObjectId id3 = new ObjectId();
+
+        cache.put("fs", id, new JsonObject(), 0);
+        cache.put("fs", id2, new JsonObject(), 0);
+        cache.get("fs", id);
+        cache.put("fs", id3, new JsonObject(), 0);
+
+        assertNotNull(cache.get("fs", id));
+        assertNull(cache.get("fs", id2));
+        assertNotNull(cache.get("fs", id3));
+        assertEquals(1L, cache.getStats().getLong("evictions").longValue());
+
+    }
+
+    @Test
+    public void testInvalidate() {
+
+        FileInfoCache cache = new FileInfoCache(10, 60000, 1000);
+        long version = cache.getVersion("fs", id);
+        cache.put("fs", id, new JsonObject(), version);
+
+        cache.invalidate("fs", id);
+        assertNull(cache.get("fs", id));
+
+        // A result read before the invalidation is not cached
+        assertFalse(cache.put("fs", id, new JsonObject(), version));
+        assertTrue(cache.put("fs", id, new JsonObject(), cache.getVersion("fs", id)));
+
+    }
+
+}
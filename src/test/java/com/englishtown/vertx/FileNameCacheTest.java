@@ -0,0 +1,90 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import org.junit.Test;
+import org.vertx.java.core.json.JsonObject;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link FileNameCache}
+ */
+public class FileNameCacheTest {
+
+    @Test
+    public void testGet() {
+
+        FileNameCache cache = new FileNameCache(10, 60000, 1000);
+        assertNull(cache.get("fs", "a.txt", -1));
+
+        cache.put("fs", "a.txt", -1, new JsonObject().putString("id", "1"), cache.getVersion("fs", "a.txt"));
+        assertEquals("1", cache.get("fs", "a.txt", -1).getFileInfo().getString("id"));
+        assertNull(cache.get("fs", "a.txt", 0));
+        assertNull(cache.get("other", "a.txt", -1));
+
+    }
+
+    @Test
+    public void testInvalidate_All_Revisions() {
+
+        FileNameCache cache = new FileNameCache(10, 60000, 1000);
+        long version = cache.getVersion("fs", "a.txt");
+        cache.put("fs", "a.txt", -1, new JsonObject(), version);
+        cache.put("fs", "a.txt", 0, new JsonObject(), version);
+        cache.put("fs", "a.txt", -3, null, version);
+        cache.put("fs", "b.txt", -1, new JsonObject(), cache.getVersion("fs", "b.txt"));
+
+        cache.invalidate("fs", "a.txt");
+
+        assertNull(cache.get("fs", "a.txt", -1));
+        assertNull(cache.get("fs", "a.txt", 0));
+        assertNull(cache.get("fs", "a.txt", -3));
+        assertNotNull(cache.get("fs", "b.txt", -1));
+        assertEquals(3L, cache.getStats().getLong("invalidations").longValue());
+
+        // A result resolved before the invalidation is not cached
+        assertFalse(cache.put("fs", "a.txt", -1, new JsonObject(), version));
+
+    }
+
+    @Test
+    public void testMax_Entries() {
+
+        FileNameCache cache = new FileNameCache(2, 60000, 1000);
+        cache.put("fs", "a.txt", -1, new JsonObject(), 0);
+        cache.put("fs", "b.txt", -1, new JsonObject(), 0);
+        cache.put("fs", "c.txt", -1, new JsonObject(), 0);
+
+        assertNull(cache.get("fs", "a.txt", -1));
+        assertNotNull(cache.get("fs", "c.txt", -1));
+        assertEquals(1L, cache.getStats().getLong("evictions").longValue());
+
+        // The evicted name no longer counts as cached
+        cache.invalidate("fs", "a.txt");
+        assertEquals(0L, cache.getStats().getLong("invalidations").longValue());
+
+    }
+
+}
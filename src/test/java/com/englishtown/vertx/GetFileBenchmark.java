@@ -0,0 +1,113 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoClient;
+import com.mongodb.gridfs.GridFS;
+import com.mongodb.gridfs.GridFSDBFile;
+import com.mongodb.util.JSON;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.*;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark comparing the per call cost of the original getFile read path, which creates a {@link GridFS} and
+ * maps a {@link GridFSDBFile}, with the cached collection and projected query used by {@link GridFSModule#getFile}.
+ * <p>
+ * Needs a MongoDB server on localhost:27017, like the integration tests.  Run org.openjdk.jmh.Main GetFileBenchmark
+ * with the test classpath after mvn test-compile.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetFileBenchmark {
+
+    private static final String BUCKET = "benchmark";
+
+    private MongoClient mongo;
+    private DB db;
+    private DBCollection files;
+    private ObjectId id;
+
+    @Setup
+    public void setUp() throws Exception {
+        mongo = new MongoClient("localhost", 27017);
+        db = mongo.getDB("default_db");
+        files = db.getCollection(BUCKET + ".files");
+
+        id = new ObjectId();
+        files.insert(BasicDBObjectBuilder.start()
+                .add("_id", id)
+                .add("filename", "benchmark.jpg")
+                .add("contentType", "image/jpeg")
+                .add("length", 1048576L)
+                .add("chunkSize", 262144)
+                .add("uploadDate", new Date())
+                .add("md5", "d41d8cd98f00b204e9800998ecf8427e")
+                .add("metadata", new BasicDBObject("owner", "benchmark"))
+                .get());
+    }
+
+    @TearDown
+    public void tearDown() {
+        files.remove(new BasicDBObject("_id", id));
+        mongo.close();
+    }
+
+    @Benchmark
+    public JsonObject gridFS() {
+        GridFSDBFile file = new GridFS(db, BUCKET).findOne(id);
+
+        JsonObject fileInfo = new JsonObject()
+                .putString("filename", file.getFilename())
+                .putString("contentType", file.getContentType())
+                .putNumber("length", file.getLength())
+                .putNumber("chunkSize", file.getChunkSize())
+                .putNumber("uploadDate", file.getUploadDate().getTime());
+
+        DBObject metadata = file.getMetaData();
+        if (metadata != null) {
+            fileInfo.putObject("metadata", new JsonObject(JSON.serialize(metadata)));
+        }
+        return fileInfo;
+    }
+
+    @Benchmark
+    public JsonObject lean() {
+        DBObject file = files.findOne(new BasicDBObject("_id", id), GridFSModule.FILE_INFO_FIELDS);
+        return GridFSModule.toFileInfo(file);
+    }
+
+}
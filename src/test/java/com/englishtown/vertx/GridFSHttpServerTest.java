@@ -0,0 +1,68 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link GridFSHttpServer}
+ */
+public class GridFSHttpServerTest {
+
+    @Test
+    public void testParseRange() {
+        assertArrayEquals(new long[]{0, 99}, GridFSHttpServer.parseRange("bytes=0-99", 1000));
+        assertArrayEquals(new long[]{500, 999}, GridFSHttpServer.parseRange("bytes=500-", 1000));
+        assertArrayEquals(new long[]{900, 999}, GridFSHttpServer.parseRange("bytes=-100", 1000));
+        assertArrayEquals(new long[]{0, 999}, GridFSHttpServer.parseRange("bytes=-5000", 1000));
+        assertArrayEquals(new long[]{990, 999}, GridFSHttpServer.parseRange("bytes=990-2000", 1000));
+    }
+
+    @Test
+    public void testParseRange_Ignored() {
+        assertNull(GridFSHttpServer.parseRange(null, 1000));
+        assertNull(GridFSHttpServer.parseRange("items=0-99", 1000));
+        assertNull(GridFSHttpServer.parseRange("bytes=0-9,20-29", 1000));
+        assertNull(GridFSHttpServer.parseRange("bytes=abc-", 1000));
+        assertNull(GridFSHttpServer.parseRange("bytes=50-10", 1000));
+    }
+
+    @Test
+    public void testParseRange_Unsatisfiable() {
+        assertSame(GridFSHttpServer.UNSATISFIABLE, GridFSHttpServer.parseRange("bytes=1000-", 1000));
+        assertSame(GridFSHttpServer.UNSATISFIABLE, GridFSHttpServer.parseRange("bytes=-0", 1000));
+        assertSame(GridFSHttpServer.UNSATISFIABLE, GridFSHttpServer.parseRange("bytes=0-", 0));
+    }
+
+    @Test
+    public void testMatchesEtag() {
+        assertTrue(GridFSHttpServer.matchesEtag("\"abc\"", "\"abc\""));
+        assertTrue(GridFSHttpServer.matchesEtag("\"x\", W/\"abc\"", "\"abc\""));
+        assertTrue(GridFSHttpServer.matchesEtag("*", "\"abc\""));
+        assertFalse(GridFSHttpServer.matchesEtag("\"abcd\"", "\"abc\""));
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import com.mongodb.DBObject;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.Date;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for the {@link GridFSModule} listFiles query and cursor helpers
+ */
+public class ListFilesQueryTest {
+
+    @Test
+    public void testBuildListQuery() {
+        JsonObject filter = new JsonObject()
+                .putString("filename_prefix", "reports/2014.")
+                .putString("contentType", "text/csv")
+                .putNumber("uploaded_after", 1000L)
+                .putNumber("uploaded_before", 2000L)
+                .putObject("metadata", new JsonObject().putString("owner", "ops"));
+
+        DBObject query = GridFSModule.buildListQuery(filter);
+
+        assertEquals("^reports/2014\\.", ((Pattern) query.get("filename")).pattern());
+        assertEquals("text/csv", query.get("contentType"));
+        DBObject uploadDate = (DBObject) query.get("uploadDate");
+        assertEquals(new Date(1000L), uploadDate.get("$gte"));
+        assertEquals(new Date(2000L), uploadDate.get("$lt"));
+        assertEquals("ops", query.get("metadata.owner"));
+    }
+
+    @Test
+    public void testBuildListQuery_Unsupported() {
+        try {
+            GridFSModule.buildListQuery(new JsonObject().putString("owner", "ops"));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("filter owner is not supported", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testEscapeRegex() {
+        assertEquals("a\\+b\\(1\\)\\[x\\]\\*", GridFSModule.escapeRegex("a+b(1)[x]*"));
+        assertEquals("plain/name", GridFSModule.escapeRegex("plain/name"));
+    }
+
+    @Test
+    public void testParseListCursor() {
+        ObjectId id = new ObjectId();
+
+        assertArrayEquals(new Object[]{null, id}, GridFSModule.parseListCursor("_id", id.toString()));
+        assertArrayEquals(new Object[]{new Date(1234L), id},
+                GridFSModule.parseListCursor("uploadDate", "1234_" + id.toString()));
+
+        assertNull(GridFSModule.parseListCursor("_id", "1234_" + id.toString()));
+        assertNull(GridFSModule.parseListCursor("uploadDate", id.toString()));
+        assertNull(GridFSModule.parseListCursor("uploadDate", "x_" + id.toString()));
+    }
+
+}
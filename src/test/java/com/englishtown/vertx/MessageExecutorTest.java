@@ -0,0 +1,144 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import org.junit.Test;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link MessageExecutor}
+ */
+public class MessageExecutorTest {
+
+    @Test
+    public void testExecute() throws Exception {
+        MessageExecutor executor = new MessageExecutor(null, "execute", 2, 10);
+        final CountDownLatch done = new CountDownLatch(3);
+        Handler<Message<Object>> handler = new Handler<Message<Object>>() {
+            @Override
+            public void handle(Message<Object> message) {
+                done.countDown();
+            }
+        };
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(executor.execute(null, handler));
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        executor.shutdown(1000);
+    }
+
+    @Test
+    public void testCurrent() throws Exception {
+        final MessageExecutor executor = new MessageExecutor(null, "current", 1, 10);
+        final AtomicReference<MessageExecutor> current = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        executor.execute(null, new Handler<Message<Object>>() {
+            @Override
+            public void handle(Message<Object> message) {
+                current.set(MessageExecutor.current());
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertSame(executor, current.get());
+        assertNull(MessageExecutor.current());
+        executor.shutdown(1000);
+    }
+
+    @Test
+    public void testRejects_When_Queue_Full() throws Exception {
+        MessageExecutor executor = new MessageExecutor(null, "full", 1, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Handler<Message<Object>> blocking = new Handler<Message<Object>>() {
+            @Override
+            public void handle(Message<Object> message) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        assertTrue(executor.execute(null, blocking));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(executor.execute(null, blocking));
+        assertFalse(executor.execute(null, blocking));
+
+        JsonObject stats = executor.getStats();
+        assertEquals(1, stats.getInteger("active").intValue());
+        assertEquals(1, stats.getInteger("queued").intValue());
+        assertEquals(1L, stats.getLong("rejected").longValue());
+
+        release.countDown();
+        executor.shutdown(1000);
+    }
+
+    @Test
+    public void testShutdown_Returns_Queued_Messages() throws Exception {
+        MessageExecutor executor = new MessageExecutor(null, "shutdown", 1, 10);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Handler<Message<Object>> blocking = new Handler<Message<Object>>() {
+            @Override
+            public void handle(Message<Object> message) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        assertTrue(executor.execute(null, blocking));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(executor.execute(null, blocking));
+        assertTrue(executor.execute(null, blocking));
+
+        // The running handler is still blocked, so only the two queued messages come back
+        assertEquals(2, executor.shutdown(10).size());
+        assertFalse(executor.execute(null, blocking));
+        release.countDown();
+    }
+
+}
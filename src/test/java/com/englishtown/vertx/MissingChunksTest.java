@@ -0,0 +1,69 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import org.junit.Test;
+import org.vertx.java.core.json.JsonArray;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests for {@link MissingChunks}
+ */
+public class MissingChunksTest {
+
+    @Test
+    public void testNone_Missing() {
+        MissingChunks missing = new MissingChunks(4);
+        for (int n = 0; n < 4; n++) {
+            missing.add(n);
+        }
+        missing.finish();
+
+        assertEquals(0, missing.getRanges().size());
+        assertEquals(0, missing.getMissingCount());
+    }
+
+    @Test
+    public void testAll_Missing() {
+        MissingChunks missing = new MissingChunks(10000).finish();
+
+        assertEquals("[[0,9999]]", missing.getRanges().encode());
+        assertEquals(10000, missing.getMissingCount());
+    }
+
+    @Test
+    public void testGaps() {
+        MissingChunks missing = new MissingChunks(10);
+        for (int n : new int[]{2, 3, 5, 5, 6, 8, 12}) {
+            missing.add(n);
+        }
+        missing.finish();
+
+        JsonArray ranges = missing.getRanges();
+        assertEquals("[[0,1],[4,4],[7,7],[9,9]]", ranges.encode());
+        assertEquals(5, missing.getMissingCount());
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link OrphanSweeper}
+ */
+public class OrphanSweeperTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private final TreeMap<ObjectId, Integer> chunks = new TreeMap<>();
+    private final Map<ObjectId, Long> chunkTimes = new HashMap<>();
+    private final Set<ObjectId> files = new HashSet<>();
+    private long now;
+
+    private final OrphanSweeper.Store store = new OrphanSweeper.Store() {
+        @Override
+        public List<ObjectId> nextFileIds(String bucket, ObjectId after, int limit) {
+            List<ObjectId> ids = new ArrayList<>(chunks.tailMap(after, false).keySet());
+            return ids.subList(0, Math.min(limit, ids.size()));
+        }
+
+        @Override
+        public Set<ObjectId> existingFiles(String bucket, List<ObjectId> ids) {
+            Set<ObjectId> existing = new HashSet<>(ids);
+            existing.retainAll(files);
+            return existing;
+        }
+
+        @Override
+        public long lastChunkTime(String bucket, ObjectId filesId) {
+            Long time = chunkTimes.get(filesId);
+            return time == null ? Long.MAX_VALUE : time;
+        }
+
+        @Override
+        public int removeChunks(String bucket, ObjectId filesId, int max) {
+            Integer count = chunks.get(filesId);
+            if (count == null) {
+                return 0;
+            }
+            int removed = Math.min(count, max);
+            if (removed == count) {
+                chunks.remove(filesId);
+            } else {
+                chunks.put(filesId, count - removed);
+            }
+            return removed;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        now = 100 * HOUR;
+    }
+
+    private ObjectId addFile(long age, int chunkCount, boolean orphan) {
+        return addFile(age, age, chunkCount, orphan);
+    }
+
+    private ObjectId addFile(long idAge, long chunkAge, int chunkCount, boolean orphan) {
+        ObjectId id = new ObjectId(new Date(now - idAge));
+        chunks.put(id, chunkCount);
+        chunkTimes.put(id, now - chunkAge);
+        if (!orphan) {
+            files.add(id);
+        }
+        return id;
+    }
+
+    @Test
+    public void testRemoves_Old_Orphans_Only() {
+        ObjectId kept = addFile(2 * HOUR, 3, false);
+        ObjectId orphan = addFile(2 * HOUR, 3, true);
+        ObjectId recent = addFile(0, 3, true);
+
+        OrphanSweeper sweeper = new OrphanSweeper(store, Arrays.asList("fs"), 10, 100, HOUR, HOUR);
+        for (int i = 0; i < 3; i++) {
+            sweeper.tick(now);
+        }
+
+        assertTrue(chunks.containsKey(kept));
+        assertFalse(chunks.containsKey(orphan));
+        assertTrue(chunks.containsKey(recent));
+
+        JsonObject stats = sweeper.getStats();
+        assertEquals(1L, stats.getLong("passes").longValue());
+        assertEquals(3L, stats.getLong("scanned").longValue());
+        assertEquals(1L, stats.getLong("orphans").longValue());
+        assertEquals(3L, stats.getLong("chunksRemoved").longValue());
+    }
+
+    @Test
+    public void testKeeps_Recent_Chunks_Of_Old_Files_Id() {
+        ObjectId uploading = addFile(100 * HOUR, 0, 3, true);
+
+        OrphanSweeper sweeper = new OrphanSweeper(store, Arrays.asList("fs"), 10, 100, HOUR, HOUR);
+        sweeper.tick(now);
+        sweeper.tick(now);
+
+        assertTrue(chunks.containsKey(uploading));
+        assertEquals(0L, sweeper.getStats().getLong("orphans").longValue());
+    }
+
+    @Test
+    public void testThrottled() {
+        ObjectId orphan = addFile(2 * HOUR, 10, true);
+
+        OrphanSweeper sweeper = new OrphanSweeper(store, Arrays.asList("fs"), 10, 4, HOUR, HOUR);
+
+        sweeper.tick(now);
+        assertEquals(6, chunks.get(orphan).intValue());
+        sweeper.tick(now);
+        assertEquals(2, chunks.get(orphan).intValue());
+        sweeper.tick(now);
+        assertFalse(chunks.containsKey(orphan));
+
+        assertEquals(2L, sweeper.getStats().getLong("throttledTicks").longValue());
+    }
+
+    @Test
+    public void testWaits_Between_Passes() {
+        OrphanSweeper sweeper = new OrphanSweeper(store, Arrays.asList("fs"), 10, 100, HOUR, HOUR);
+        sweeper.tick(now);
+        assertEquals(1L, sweeper.getStats().getLong("passes").longValue());
+
+        ObjectId orphan = addFile(2 * HOUR, 1, true);
+        sweeper.tick(now + 1000);
+        assertTrue(chunks.containsKey(orphan));
+
+        sweeper.tick(now + HOUR);
+        sweeper.tick(now + HOUR);
+        assertFalse(chunks.containsKey(orphan));
+    }
+
+    @Test
+    public void testSweeps_Each_Bucket() {
+        final List<String> swept = new ArrayList<>();
+        OrphanSweeper.Store recording = new OrphanSweeper.Store() {
+            @Override
+            public List<ObjectId> nextFileIds(String bucket, ObjectId after, int limit) {
+                swept.add(bucket);
+                return new ArrayList<>();
+            }
+
+            @Override
+            public Set<ObjectId> existingFiles(String bucket, List<ObjectId> ids) {
+                return new HashSet<>();
+            }
+
+            @Override
+            public long lastChunkTime(String bucket, ObjectId filesId) {
+                return Long.MAX_VALUE;
+            }
+
+            @Override
+            public int removeChunks(String bucket, ObjectId filesId, int max) {
+                return 0;
+            }
+        };
+
+        OrphanSweeper sweeper = new OrphanSweeper(recording, Arrays.asList("a", "b"), 10, 100, HOUR, HOUR);
+        sweeper.tick(now);
+        sweeper.tick(now);
+        sweeper.tick(now);
+
+        assertEquals(Arrays.asList("a", "b"), swept);
+        assertEquals(1L, sweeper.getStats().getLong("passes").longValue());
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import com.mongodb.DBObject;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link UploadSession}
+ */
+public class UploadSessionTest {
+
+    @Test
+    public void testAppend_Rechunks_Arbitrary_Sizes() {
+
+        UploadSession session = new UploadSession(new ObjectId(), "fs", 10, null, null, null, "ACKNOWLEDGED");
+        List<DBObject> chunks = new ArrayList<>();
+        byte next = 0;
+
+        for (int size : new int[]{3, 4, 25, 1, 0, 9}) {
+            byte[] bytes = new byte[size];
+            for (int i = 0; i < size; i++) {
+                bytes[i] = next++;
+            }
+            chunks.addAll(session.append(Unpooled.wrappedBuffer(bytes)));
+        }
+
+        assertEquals(42, session.getLength());
+        assertEquals(4, chunks.size());
+
+        DBObject last = session.finish();
+        assertNotNull(last);
+        chunks.add(last);
+
+        byte expected = 0;
+        for (int n = 0; n < chunks.size(); n++) {
+            DBObject chunk = chunks.get(n);
+            assertEquals(n, chunk.get("n"));
+            ByteBuf data = (ByteBuf) chunk.get("data");
+            assertEquals(n < 4 ? 10 : 2, data.readableBytes());
+            while (data.isReadable()) {
+                assertEquals(expected++, data.readByte());
+            }
+        }
+
+    }
+
+    @Test
+    public void testFinish_Exact_Chunk_Multiple() {
+
+        UploadSession session = new UploadSession(new ObjectId(), "fs", 4, null, null, null, "ACKNOWLEDGED");
+
+        assertEquals(2, session.append(Unpooled.wrappedBuffer(new byte[8])).size());
+        assertNull(session.finish());
+        assertEquals(8, session.getLength());
+
+    }
+
+}
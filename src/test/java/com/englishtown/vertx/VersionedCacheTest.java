@@ -0,0 +1,102 @@
+/*
+ * The MIT License (MIT)
+ * Copyright © 2013 Englishtown <opensource@englishtown.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.englishtown.vertx;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link VersionedCache}
+ */
+public class VersionedCacheTest {
+
+    private final List<String> released = new ArrayList<>();
+
+    private VersionedCache<String> createCache(long maxWeight, long ttl, long negativeTtl) {
+        return new VersionedCache<String>(maxWeight, ttl, negativeTtl) {
+            @Override
+            protected void release(String value) {
+                released.add(value);
+            }
+        };
+    }
+
+    @Test
+    public void testGet_Expired() throws Exception {
+
+        VersionedCache<String> cache = createCache(10, 20, 20);
+        cache.put("fs", "a", 0, "a0", 1, cache.getVersion("fs", "a"));
+        assertEquals("a0", cache.get("fs", "a", 0).getValue());
+
+        Thread.sleep(30);
+        assertNull(cache.get("fs", "a", 0));
+        assertEquals(0, cache.getWeight());
+        assertEquals(1, released.size());
+
+    }
+
+    @Test
+    public void testPut_Evicts_By_Weight() {
+
+        VersionedCache<String> cache = createCache(10, Long.MAX_VALUE, 0);
+        cache.put("fs", "a", 0, "a0", 4, 0);
+        cache.put("fs", "a", 1, "a1", 4, 0);
+        cache.put("fs", "b", 0, "b0", 4, 0);
+
+        assertNull(cache.get("fs", "a", 0));
+        assertEquals("a1", cache.get("fs", "a", 1).getValue());
+        assertEquals(8, cache.getWeight());
+        assertEquals("[a0]", released.toString());
+
+        // A value heavier than the whole cache is not cached
+        assertFalse(cache.put("fs", "c", 0, "c0", 11, 0));
+
+    }
+
+    @Test
+    public void testInvalidate_Group() {
+
+        VersionedCache<String> cache = createCache(10, Long.MAX_VALUE, 0);
+        cache.put("fs", "a", 0, "a0", 1, 0);
+        cache.put("fs", "a", 1, "a1", 1, 0);
+        cache.put("fs", "b", 0, "b0", 1, 0);
+
+        cache.invalidate("fs", "a");
+
+        assertNull(cache.get("fs", "a", 0));
+        assertNull(cache.get("fs", "a", 1));
+        assertNotNull(cache.get("fs", "b", 0));
+        assertEquals(2L, cache.getStats().getLong("invalidations").longValue());
+        assertEquals(2, released.size());
+
+        // Null results are not cached without a negative time to live
+        assertFalse(cache.put("fs", "c", 0, null, 1, cache.getVersion("fs", "c")));
+
+    }
+
+}